@@ -25,18 +25,25 @@ package at.syntaxerror.syntaxnbt;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.zip.DeflaterOutputStream;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
-import java.util.zip.InflaterInputStream;
+import java.util.concurrent.Executor;
+import java.util.zip.Deflater;
 
+import at.syntaxerror.syntaxnbt.internal.NBTCompressionUtil;
+import at.syntaxerror.syntaxnbt.internal.ParallelDeflaterOutputStream;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 
 /**
- * This enum contains all supported compression schemes for NBT files
+ * This enum contains all supported compression schemes for NBT files.
+ * <p>
+ * Compression is backed by a shared pool of {@link Deflater Deflaters} and
+ * {@link java.util.zip.Inflater Inflaters}, so repeatedly (de)compressing
+ * small payloads (e.g. chunks) does not allocate a new native zlib context each time.
+ * The compression level and strategy can be specified per call (e.g. {@link Deflater#BEST_SPEED}
+ * for frequent saves and {@link Deflater#BEST_COMPRESSION} for archival purposes)
  * 
  * @author SyntaxError404
  * 
@@ -45,13 +52,22 @@ import lombok.RequiredArgsConstructor;
 public enum NBTCompression {
 
 	/** compress NBT using gzip */
-	GZIP((byte) 1, GZIPOutputStream::new, GZIPInputStream::new),
+	GZIP((byte) 1, NBTCompressionUtil::newGZIPOutputStream, NBTCompressionUtil::newGZIPInputStream),
 	
 	/** compress NBT using zlib */
-	ZLIB((byte) 2, DeflaterOutputStream::new, InflaterInputStream::new),
+	ZLIB((byte) 2, NBTCompressionUtil::newZlibOutputStream, NBTCompressionUtil::newZlibInputStream),
 	
 	/** do not compress NBT */
-	NONE((byte) 3, stream -> stream, stream -> stream);
+	NONE((byte) 3, (stream, level, strategy) -> stream, stream -> stream),
+	
+	/**
+	 * compress NBT using zlib and the {@link NBTDictionary#getDefault() default preset dictionary}.
+	 * The id of the dictionary is stored in the zlib header; the corresponding dictionary
+	 * has to be {@link NBTDictionary#register(NBTDictionary) registered} for decompression.
+	 * <p>
+	 * <b>Note:</b> this scheme is not supported by Minecraft itself
+	 */
+	ZLIB_DICTIONARY((byte) 126, NBTCompressionUtil::newZlibDictionaryOutputStream, NBTCompressionUtil::newZlibInputStream);
 	
 	private static final Map<Byte, NBTCompression> MAPPING = new HashMap<>();
 	
@@ -81,35 +97,127 @@ public enum NBTCompression {
 	@Getter
 	private final byte id;
 	
-	private final StreamFactory<OutputStream> outputStreamFactory;
+	private final CompressorFactory outputStreamFactory;
 	private final StreamFactory<InputStream> inputStreamFactory;
 
 	/**
-	 * Wraps an output stream around the corresponding decompressor stream
+	 * Wraps an output stream around the corresponding compressor stream,
+	 * using the default compression level and strategy
 	 * 
-	 * @param stream stream to be decompressed
-	 * @return the decompressed stream
+	 * @param stream stream to be compressed
+	 * @return the compressed stream
 	 * @throws IOException if an I/O error occured
+	 * @see #newOutputStream(OutputStream, int, int)
 	 */
 	public OutputStream newOutputStream(OutputStream stream) throws IOException {
-		return outputStreamFactory.construct(stream);
+		return newOutputStream(stream, Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY);
 	}
 
 	/**
-	 * Wraps an input stream around the corresponding compressor stream
+	 * Wraps an output stream around the corresponding compressor stream
 	 * 
 	 * @param stream stream to be compressed
+	 * @param level the compression level ({@code 0-9} or {@link Deflater#DEFAULT_COMPRESSION})
+	 * @param strategy the compression strategy ({@link Deflater#DEFAULT_STRATEGY},
+	 * 	{@link Deflater#FILTERED}, or {@link Deflater#HUFFMAN_ONLY})
 	 * @return the compressed stream
 	 * @throws IOException if an I/O error occured
+	 * @see #newOutputStream(OutputStream)
+	 */
+	public OutputStream newOutputStream(OutputStream stream, int level, int strategy) throws IOException {
+		return outputStreamFactory.construct(stream, level, strategy);
+	}
+
+	/**
+	 * Wraps an output stream around a compressor stream that deflates blocks
+	 * of data concurrently on the given executor (similar to <i>pigz</i>).
+	 * This is beneficial for large amounts of data (multiple MiB), whereas
+	 * {@link #newOutputStream(OutputStream, int, int)} should be preferred otherwise.
+	 * <p>
+	 * The resulting data is a regular gzip/zlib stream and can be read
+	 * via {@link #newInputStream(InputStream)} as usual
+	 * 
+	 * @param stream stream to be compressed
+	 * @param level the compression level ({@code 0-9} or {@link Deflater#DEFAULT_COMPRESSION})
+	 * @param strategy the compression strategy ({@link Deflater#DEFAULT_STRATEGY},
+	 * 	{@link Deflater#FILTERED}, or {@link Deflater#HUFFMAN_ONLY})
+	 * @param executor the executor to compress the data on (e.g. {@link java.util.concurrent.ForkJoinPool#commonPool()})
+	 * @return the compressed stream
+	 * @throws IOException if an I/O error occured
+	 */
+	public OutputStream newParallelOutputStream(OutputStream stream, int level, int strategy, Executor executor) throws IOException {
+		switch(this) {
+		case GZIP:	return new ParallelDeflaterOutputStream(stream, true, level, strategy, executor);
+		case ZLIB:	return new ParallelDeflaterOutputStream(stream, false, level, strategy, executor);
+		case ZLIB_DICTIONARY:
+			return new ParallelDeflaterOutputStream(stream, NBTDictionary.getDefault(), level, strategy, executor);
+		default:	return newOutputStream(stream, level, strategy);
+		}
+	}
+
+	/**
+	 * Wraps an input stream around the corresponding decompressor stream
+	 * 
+	 * @param stream stream to be decompressed
+	 * @return the decompressed stream
+	 * @throws IOException if an I/O error occured
 	 */
 	public InputStream newInputStream(InputStream stream) throws IOException {
 		return inputStreamFactory.construct(stream);
 	}
 	
+	/**
+	 * Compresses the remaining bytes of a buffer in one go, using the default compression
+	 * level and strategy. The position of the buffer is not modified
+	 * 
+	 * @param input the data to be compressed
+	 * @return the compressed data
+	 * @see #compress(ByteBuffer, int, int)
+	 */
+	public byte[] compress(ByteBuffer input) {
+		return compress(input, Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY);
+	}
+
+	/**
+	 * Compresses the remaining bytes of a buffer in one go.
+	 * The position of the buffer is not modified.
+	 * <p>
+	 * Direct buffers (e.g. memory-mapped files) are handed to zlib without being copied
+	 * 
+	 * @param input the data to be compressed
+	 * @param level the compression level ({@code 0-9} or {@link Deflater#DEFAULT_COMPRESSION})
+	 * @param strategy the compression strategy ({@link Deflater#DEFAULT_STRATEGY},
+	 * 	{@link Deflater#FILTERED}, or {@link Deflater#HUFFMAN_ONLY})
+	 * @return the compressed data
+	 * @see #compress(ByteBuffer)
+	 */
+	public byte[] compress(ByteBuffer input, int level, int strategy) {
+		return NBTCompressionUtil.compress(this, input, level, strategy);
+	}
+
+	/**
+	 * Decompresses the remaining bytes of a buffer in one go.
+	 * The position of the buffer is not modified.
+	 * <p>
+	 * Direct buffers (e.g. memory-mapped files) are handed to zlib without being copied
+	 * 
+	 * @param input the data to be decompressed
+	 * @return the decompressed data
+	 */
+	public byte[] decompress(ByteBuffer input) {
+		return NBTCompressionUtil.decompress(this, input);
+	}
+	
 	private static interface StreamFactory<S> {
 		
 		S construct(S out) throws IOException;
 		
 	}
 	
+	private static interface CompressorFactory {
+		
+		OutputStream construct(OutputStream out, int level, int strategy) throws IOException;
+		
+	}
+	
 }
@@ -0,0 +1,415 @@
+/* MIT License
+ * 
+ * Copyright (c) 2022 SyntaxError404
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package at.syntaxerror.syntaxnbt;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.zip.Adler32;
+
+import at.syntaxerror.syntaxnbt.internal.NBTSerializer;
+import at.syntaxerror.syntaxnbt.tag.TagCompound;
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * A preset dictionary for {@link NBTCompression#ZLIB_DICTIONARY zlib compression}.
+ * <p>
+ * NBT data (especially chunks) is highly repetitive: the same keys, block names and
+ * palette layouts appear over and over again. A dictionary containing those common
+ * byte sequences lets zlib reference them right from the start of the stream, which
+ * results in better compression ratios (and faster compression) for small payloads.
+ * <p>
+ * Compressed data only stores the {@link #getId() id} of the dictionary (zlib's {@code DICTID}),
+ * so the dictionary itself must be {@link #register(NBTDictionary) registered} before the
+ * data can be decompressed again.
+ * 
+ * @author SyntaxError404
+ * 
+ */
+public final class NBTDictionary {
+	
+	/** The maximum size of a dictionary (equal to the size of zlib's sliding window) */
+	public static final int MAX_SIZE = 32 * 1024;
+	
+	private static final int KMER_LENGTH = 8;
+	private static final int SEGMENT_LENGTH = 64;
+	
+	private static final Map<Integer, NBTDictionary> REGISTRY = new HashMap<>();
+	
+	private static volatile NBTDictionary defaultDictionary;
+	
+	/**
+	 * Makes a dictionary available for decompression. If another dictionary
+	 * with the same id has already been registered, it is replaced
+	 * 
+	 * @param dictionary the dictionary
+	 */
+	public static void register(@NonNull NBTDictionary dictionary) {
+		synchronized(REGISTRY) {
+			REGISTRY.put(dictionary.getId(), dictionary);
+		}
+	}
+	
+	/**
+	 * Returns the registered dictionary with the specified id
+	 * 
+	 * @param id the id of the dictionary
+	 * @return the dictionary
+	 * @throws NBTException if no such dictionary has been registered
+	 */
+	public static NBTDictionary getDictionary(int id) {
+		NBTDictionary dictionary;
+		
+		synchronized(REGISTRY) {
+			dictionary = REGISTRY.get(id);
+		}
+		
+		if(dictionary == null)
+			throw new NBTException("Unknown preset dictionary: " + Integer.toHexString(id));
+		
+		return dictionary;
+	}
+	
+	/**
+	 * Returns the dictionary used for compressing data via {@link NBTCompression#ZLIB_DICTIONARY}
+	 * 
+	 * @return the default dictionary
+	 * @throws NBTException if no default dictionary has been set
+	 */
+	public static NBTDictionary getDefault() {
+		NBTDictionary dictionary = defaultDictionary;
+		
+		if(dictionary == null)
+			throw new NBTException("No default preset dictionary has been set");
+		
+		return dictionary;
+	}
+	
+	/**
+	 * Sets the dictionary used for compressing data via {@link NBTCompression#ZLIB_DICTIONARY}.
+	 * The dictionary is also {@link #register(NBTDictionary) registered} for decompression
+	 * 
+	 * @param dictionary the default dictionary
+	 */
+	public static void setDefault(@NonNull NBTDictionary dictionary) {
+		register(dictionary);
+		defaultDictionary = dictionary;
+	}
+	
+	/**
+	 * Trains a dictionary from a collection of sample tags (e.g. {@link at.syntaxerror.syntaxnbt.region.Chunk#getData() chunks}).
+	 * 
+	 * @param samples the sample tags
+	 * @param size the maximum size of the dictionary (at most {@link #MAX_SIZE})
+	 * @return the trained dictionary
+	 * @see #train(List, int)
+	 */
+	public static NBTDictionary trainFromTags(@NonNull Collection<TagCompound> samples, int size) {
+		List<byte[]> serialized = new ArrayList<>();
+		
+		for(TagCompound sample : samples)
+			try(ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				DataOutputStream out = new DataOutputStream(bytes)) {
+				
+				NBTSerializer.serialize(null, sample, out);
+				out.flush();
+				
+				serialized.add(bytes.toByteArray());
+			} catch (IOException e) {
+				throw new NBTException("Failed to serialize sample", e);
+			}
+		
+		return train(serialized, size);
+	}
+	
+	/**
+	 * Trains a dictionary from a collection of samples (uncompressed NBT data).
+	 * <p>
+	 * The samples are split into segments of 64 bytes, which are then rated
+	 * by the number of samples sharing the same byte sequences. The best segments
+	 * are combined into the dictionary (the most valuable segment being at the end
+	 * of the dictionary, where zlib can reference it most cheaply), skipping byte
+	 * sequences already covered by previously selected segments.
+	 * <p>
+	 * Training is rather memory-intensive and is meant to be done ahead of time
+	 * on a representative selection of data (a few hundred chunks are usually sufficient)
+	 * 
+	 * @param samples the samples
+	 * @param size the maximum size of the dictionary (at most {@link #MAX_SIZE})
+	 * @return the trained dictionary
+	 */
+	public static NBTDictionary train(@NonNull List<byte[]> samples, int size) {
+		if(size < 1 || size > MAX_SIZE)
+			throw new NBTException("Illegal dictionary size: " + size);
+		
+		// number of samples containing each byte sequence
+		KmerCounts frequencies = new KmerCounts();
+		
+		for(byte[] sample : samples) {
+			long[] kmers = new long[Math.max(0, sample.length - KMER_LENGTH + 1)];
+			
+			for(int i = 0; i < kmers.length; ++i)
+				kmers[i] = kmer(sample, i);
+			
+			Arrays.sort(kmers);
+			
+			for(int i = 0; i < kmers.length; ++i)
+				if(i == 0 || kmers[i] != kmers[i - 1])
+					frequencies.increment(kmers[i]);
+		}
+		
+		// sequences only present in a single sample are not worth it
+		int threshold = samples.size() > 1 ? 2 : 1;
+		
+		PriorityQueue<Segment> queue = new PriorityQueue<>();
+		long[] buffer = new long[SEGMENT_LENGTH - KMER_LENGTH + 1];
+		
+		for(byte[] sample : samples)
+			for(int i = 0; i + SEGMENT_LENGTH <= sample.length; i += SEGMENT_LENGTH / 2) {
+				Segment segment = new Segment(sample, i);
+				segment.score = segment.score(frequencies, threshold, buffer);
+				
+				if(segment.score > 0)
+					queue.add(segment);
+			}
+		
+		List<Segment> selected = new ArrayList<>();
+		int total = 0;
+		
+		while(total < size && !queue.isEmpty()) {
+			Segment segment = queue.poll();
+			
+			// the score might have decreased since other segments were selected
+			int score = segment.score(frequencies, threshold, buffer);
+			
+			if(score <= 0)
+				continue;
+			
+			if(score < segment.score && !queue.isEmpty() && score < queue.peek().score) {
+				segment.score = score;
+				queue.add(segment);
+				continue;
+			}
+			
+			selected.add(segment);
+			total += SEGMENT_LENGTH;
+			
+			for(int i = 0; i + KMER_LENGTH <= SEGMENT_LENGTH; ++i)
+				frequencies.remove(kmer(segment.sample, segment.offset + i));
+		}
+		
+		byte[] data = new byte[Math.min(total, size)];
+		int pos = data.length;
+		
+		for(Segment segment : selected) {
+			int length = Math.min(SEGMENT_LENGTH, pos);
+			
+			pos -= length;
+			
+			System.arraycopy(segment.sample, segment.offset + SEGMENT_LENGTH - length, data, pos, length);
+			
+			if(pos == 0)
+				break;
+		}
+		
+		return new NBTDictionary(data);
+	}
+	
+	private static long kmer(byte[] data, int offset) {
+		long kmer = 0;
+		
+		for(int i = 0; i < KMER_LENGTH; ++i)
+			kmer = (kmer << 8) | (data[offset + i] & 0xFF);
+		
+		return kmer;
+	}
+	
+	private final byte[] data;
+	
+	/**
+	 * Returns the id of this dictionary (the Adler-32 checksum of its data, as used by zlib)
+	 * 
+	 * @return the id of this dictionary
+	 */
+	@Getter
+	private final int id;
+	
+	/**
+	 * Constructs a new dictionary
+	 * 
+	 * @param data the contents of the dictionary (at most {@link #MAX_SIZE} bytes)
+	 */
+	public NBTDictionary(@NonNull byte[] data) {
+		if(data.length == 0 || data.length > MAX_SIZE)
+			throw new NBTException("Illegal dictionary size: " + data.length);
+		
+		this.data = data.clone();
+		
+		Adler32 adler = new Adler32();
+		adler.update(data);
+		
+		id = (int) adler.getValue();
+	}
+	
+	/**
+	 * Returns the contents of this dictionary
+	 * 
+	 * @return the contents of this dictionary
+	 */
+	public byte[] getData() {
+		return data.clone();
+	}
+	
+	/**
+	 * Returns the contents of this dictionary without copying them. Do <b>not</b> alter the
+	 * returned byte array!
+	 * 
+	 * @return the contents of this dictionary
+	 * @deprecated internal use only
+	 */
+	@Deprecated
+	public byte[] getRawData() {
+		return data;
+	}
+	
+	/**
+	 * Returns the size of this dictionary
+	 * 
+	 * @return the size of this dictionary
+	 */
+	public int size() {
+		return data.length;
+	}
+	
+	/**
+	 * An open-addressing hash map from byte sequences to their frequency
+	 */
+	private static class KmerCounts {
+		
+		private static final int REMOVED = -1;
+		
+		private long[] keys = new long[1 << 16];
+		private int[] values = new int[1 << 16];
+		
+		private int size;
+		
+		private int slot(long key) {
+			int mask = keys.length - 1;
+			int i = Long.hashCode(key * 0x9E3779B97F4A7C15L) & mask;
+			
+			while(values[i] != 0 && keys[i] != key)
+				i = (i + 1) & mask;
+			
+			return i;
+		}
+		
+		public int get(long key) {
+			return Math.max(0, values[slot(key)]);
+		}
+		
+		public void increment(long key) {
+			int i = slot(key);
+			
+			if(values[i] == 0) {
+				keys[i] = key;
+				values[i] = 1;
+				
+				if(++size * 2 > keys.length)
+					grow();
+			}
+			else if(values[i] != REMOVED)
+				++values[i];
+		}
+		
+		public void remove(long key) {
+			int i = slot(key);
+			
+			if(values[i] != 0)
+				values[i] = REMOVED;
+		}
+		
+		private void grow() {
+			long[] oldKeys = keys;
+			int[] oldValues = values;
+			
+			keys = new long[oldKeys.length * 2];
+			values = new int[oldValues.length * 2];
+			
+			for(int i = 0; i < oldKeys.length; ++i)
+				if(oldValues[i] != 0) {
+					int j = slot(oldKeys[i]);
+					
+					keys[j] = oldKeys[i];
+					values[j] = oldValues[i];
+				}
+		}
+		
+	}
+	
+	private static class Segment implements Comparable<Segment> {
+		
+		private final byte[] sample;
+		private final int offset;
+		
+		private int score;
+		
+		public Segment(byte[] sample, int offset) {
+			this.sample = sample;
+			this.offset = offset;
+		}
+		
+		public int score(KmerCounts frequencies, int threshold, long[] kmers) {
+			for(int i = 0; i < kmers.length; ++i)
+				kmers[i] = kmer(sample, offset + i);
+			
+			Arrays.sort(kmers);
+			
+			int score = 0;
+			
+			for(int i = 0; i < kmers.length; ++i)
+				if(i == 0 || kmers[i] != kmers[i - 1]) {
+					int frequency = frequencies.get(kmers[i]);
+					
+					if(frequency >= threshold)
+						score += frequency;
+				}
+			
+			return score;
+		}
+		
+		@Override
+		public int compareTo(Segment other) {
+			return Integer.compare(other.score, score);
+		}
+		
+	}
+	
+}
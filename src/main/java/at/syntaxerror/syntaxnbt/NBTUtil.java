@@ -22,15 +22,28 @@
  */
 package at.syntaxerror.syntaxnbt;
 
+import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.Deflater;
 
+import at.syntaxerror.syntaxnbt.internal.ChunkSpliterator;
 import at.syntaxerror.syntaxnbt.internal.NBTCompressionUtil;
 import at.syntaxerror.syntaxnbt.internal.NBTDeserializer;
+import at.syntaxerror.syntaxnbt.internal.NBTPatcher;
 import at.syntaxerror.syntaxnbt.internal.NBTSerializer;
 import at.syntaxerror.syntaxnbt.internal.PathParser;
 import at.syntaxerror.syntaxnbt.internal.RegionUtil;
@@ -38,6 +51,9 @@ import at.syntaxerror.syntaxnbt.internal.SNBTParser;
 import at.syntaxerror.syntaxnbt.internal.SNBTStringifyer;
 import at.syntaxerror.syntaxnbt.path.PathNode;
 import at.syntaxerror.syntaxnbt.region.Region;
+import at.syntaxerror.syntaxnbt.region.RegionFolder;
+import at.syntaxerror.syntaxnbt.region.RegionSummary;
+import at.syntaxerror.syntaxnbt.region.WorldChunk;
 import at.syntaxerror.syntaxnbt.tag.TagCompound;
 import lombok.experimental.UtilityClass;
 
@@ -96,6 +112,98 @@ public class NBTUtil {
 		return RegionUtil.deserialize(input);
 	}
 
+	/**
+	 * Reads and populates a region from a file. Chunks stored in external files
+	 * ({@code c.<x>.<z>.mcc}) are read from the same directory
+	 * 
+	 * @param path path of the region file ({@code r.<x>.<z>.mca})
+	 * @return the deserialized region
+	 * @throws IOException if an I/O error occured
+	 */
+	public static Region deserializeRegion(Path path) throws IOException {
+		try(RandomAccessFile input = new RandomAccessFile(path.toFile(), "r")) {
+			return RegionUtil.deserialize(input, false, path);
+		}
+	}
+
+	/**
+	 * Reads and populates a region from a file
+	 * 
+	 * @param input file to read from
+	 * @param lazy whether chunks should only be decompressed and deserialized
+	 * 	upon first access ({@link at.syntaxerror.syntaxnbt.region.Chunk#getData() Chunk.getData()})
+	 * @return the deserialized region
+	 * @throws IOException if an I/O error occured
+	 */
+	public static Region deserializeRegion(RandomAccessFile input, boolean lazy) throws IOException {
+		return RegionUtil.deserialize(input, lazy);
+	}
+
+	/**
+	 * Reads and populates a region from a file. The chunks are read sequentially,
+	 * but decompressed and deserialized on multiple threads
+	 * 
+	 * @param input file to read from
+	 * @param executor the executor to decode the chunks on
+	 * @return the deserialized region
+	 * @throws IOException if an I/O error occured
+	 */
+	public static Region deserializeRegion(RandomAccessFile input, Executor executor) throws IOException {
+		return RegionUtil.deserialize(input, executor);
+	}
+
+	/**
+	 * Reads the summary of a region file (which chunks are present, their sizes and timestamps).
+	 * Only the location and timestamp table of the region file is read
+	 * 
+	 * @param path the path of the region file
+	 * @return the summary
+	 * @throws IOException if an I/O error occured
+	 */
+	public static RegionSummary summarizeRegion(Path path) throws IOException {
+		return RegionUtil.summarize(path);
+	}
+
+	/**
+	 * Reads the summaries of all region files ({@code r.<x>.<z>.mca}) within a directory
+	 * 
+	 * @param directory the directory containing the region files
+	 * @return the summaries
+	 * @throws IOException if an I/O error occured
+	 * @see #summarizeRegion(Path)
+	 */
+	public static List<RegionSummary> summarizeRegions(Path directory) throws IOException {
+		List<RegionSummary> summaries = new ArrayList<>();
+		
+		try(DirectoryStream<Path> files = Files.newDirectoryStream(directory, "r.*.mca")) {
+			for(Path file : files)
+				if(RegionUtil.regionPosition(file) != null)
+					summaries.add(RegionUtil.summarize(file));
+		}
+		
+		return summaries;
+	}
+
+	/**
+	 * Returns a stream of all chunks within the region files of a world. If no folders are specified,
+	 * the {@code region}, {@code entities}, and {@code poi} folders are searched.
+	 * <p>
+	 * The stream can be processed in {@link Stream#parallel() parallel}, in which case the work is split
+	 * across and within region files. The chunks are only decoded once {@link at.syntaxerror.syntaxnbt.region.Chunk#getData()
+	 * Chunk.getData()} is called, i.e. by the thread processing the chunk
+	 * 
+	 * @param world the world directory
+	 * @param folders the folders to search for region files
+	 * @return the stream of chunks
+	 * @throws IOException if an I/O error occured
+	 */
+	public static Stream<WorldChunk> streamChunks(Path world, RegionFolder... folders) throws IOException {
+		return StreamSupport.stream(
+			ChunkSpliterator.of(world, folders.length == 0 ? RegionFolder.values() : folders),
+			false
+		);
+	}
+
 	/**
 	 * Writes a compound tag to a stream (NBT format)
 	 * 
@@ -120,12 +228,51 @@ public class NBTUtil {
 	 * @see #serialize(String, TagCompound, OutputStream)
 	 */
 	public static void serialize(String name, TagCompound compound, OutputStream output, NBTCompression compression) throws IOException {
-		try(OutputStream compressed = compression.newOutputStream(output);
+		serialize(name, compound, output, compression, Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY);
+	}
+
+	/**
+	 * Writes a compound tag to a stream (NBT format)
+	 * 
+	 * @param name name of the compound tag (optional)
+	 * @param compound compound tag to be serialized
+	 * @param output stream to write to
+	 * @param compression compression scheme to apply to the stream
+	 * @param level the compression level ({@code 0-9} or {@link Deflater#DEFAULT_COMPRESSION})
+	 * @param strategy the compression strategy (e.g. {@link Deflater#DEFAULT_STRATEGY})
+	 * @throws IOException if an I/O error occured
+	 * @see #serialize(String, TagCompound, OutputStream, NBTCompression)
+	 */
+	public static void serialize(String name, TagCompound compound, OutputStream output, NBTCompression compression,
+			int level, int strategy) throws IOException {
+		try(OutputStream compressed = compression.newOutputStream(output, level, strategy);
 			DataOutputStream out = new DataOutputStream(compressed)) {
 			NBTSerializer.serialize(name, compound, out);
 		}
 	}
 
+	/**
+	 * Writes a compound tag to a stream (NBT format), compressing the data on multiple threads.
+	 * This is beneficial for large tags (multiple MiB of NBT data)
+	 * 
+	 * @param name name of the compound tag (optional)
+	 * @param compound compound tag to be serialized
+	 * @param output stream to write to
+	 * @param compression compression scheme to apply to the stream
+	 * @param level the compression level ({@code 0-9} or {@link Deflater#DEFAULT_COMPRESSION})
+	 * @param strategy the compression strategy (e.g. {@link Deflater#DEFAULT_STRATEGY})
+	 * @param executor the executor to compress the data on
+	 * @throws IOException if an I/O error occured
+	 * @see NBTCompression#newParallelOutputStream(OutputStream, int, int, Executor)
+	 */
+	public static void serialize(String name, TagCompound compound, OutputStream output, NBTCompression compression,
+			int level, int strategy, Executor executor) throws IOException {
+		try(OutputStream compressed = compression.newParallelOutputStream(output, level, strategy, executor);
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(compressed, 65536))) {
+			NBTSerializer.serialize(name, compound, out);
+		}
+	}
+
 	/**
 	 * Writes a region to a file
 	 * 
@@ -136,6 +283,77 @@ public class NBTUtil {
 	public static void serializeRegion(Region region, RandomAccessFile output) throws IOException {
 		RegionUtil.serialize(region, output);
 	}
+
+	/**
+	 * Writes a region to a file. Chunks which are too big for the region file (more than 1MiB)
+	 * are written into external files ({@code c.<x>.<z>.mcc}) in the same directory
+	 * 
+	 * @param region region to be serialized
+	 * @param path path of the region file ({@code r.<x>.<z>.mca})
+	 * @throws IOException if an I/O error occured
+	 */
+	public static void serializeRegion(Region region, Path path) throws IOException {
+		try(RandomAccessFile output = new RandomAccessFile(path.toFile(), "rw")) {
+			RegionUtil.serialize(region, output, path);
+		}
+	}
+
+	/**
+	 * Writes a region to a file. The chunks are encoded and compressed on multiple threads,
+	 * but written sequentially by the calling thread
+	 * 
+	 * @param region region to be serialized
+	 * @param output file to write to
+	 * @param executor the executor to serialize the chunks on
+	 * @throws IOException if an I/O error occured
+	 */
+	public static void serializeRegion(Region region, RandomAccessFile output, Executor executor) throws IOException {
+		RegionUtil.serialize(region, output, executor);
+	}
+
+	/**
+	 * Writes a region to a file. The chunks are encoded and compressed on multiple threads,
+	 * but written sequentially by the calling thread. Chunks which are too big for the region file
+	 * (more than 1MiB) are written into external files ({@code c.<x>.<z>.mcc}) in the same directory
+	 * 
+	 * @param region region to be serialized
+	 * @param path path of the region file ({@code r.<x>.<z>.mca})
+	 * @param executor the executor to serialize the chunks on
+	 * @throws IOException if an I/O error occured
+	 */
+	public static void serializeRegion(Region region, Path path, Executor executor) throws IOException {
+		try(RandomAccessFile output = new RandomAccessFile(path.toFile(), "rw")) {
+			RegionUtil.serialize(region, output, path, executor);
+		}
+	}
+	
+	/**
+	 * Overwrites a fixed-width number (byte, short, int, long, float, or double) within serialized, uncompressed
+	 * NBT data in place, without deserializing it. The path consists of compound keys separated by dots,
+	 * each optionally followed by list indices (e.g. {@code xPos}, {@code Level.InhabitedTime}, or {@code sections[0].Y}).
+	 * The number keeps its type, the value is converted accordingly
+	 * 
+	 * @param nbt the serialized NBT data (a named root compound), starting at the buffer's position
+	 * @param path the path of the number
+	 * @param value the new value
+	 * @return whether the number was found
+	 */
+	public static boolean patch(ByteBuffer nbt, String path, Number value) {
+		return NBTPatcher.patch(nbt, path, value);
+	}
+	
+	/**
+	 * Overwrites a fixed-width number within serialized, uncompressed NBT data in place
+	 * (see {@link #patch(ByteBuffer, String, Number)})
+	 * 
+	 * @param nbt the serialized NBT data (a named root compound)
+	 * @param path the path of the number
+	 * @param value the new value
+	 * @return whether the number was found
+	 */
+	public static boolean patch(byte[] nbt, String path, Number value) {
+		return NBTPatcher.patch(ByteBuffer.wrap(nbt), path, value);
+	}
 	
 	/**
 	 * Reads and populates a compound tag from a string (SNBT format)
@@ -0,0 +1,168 @@
+/* MIT License
+ * 
+ * Copyright (c) 2022 SyntaxError404
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package at.syntaxerror.syntaxnbt.internal;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import at.syntaxerror.syntaxnbt.region.Chunk;
+
+/**
+ * A utility class for scheduling asynchronous chunk loads and saves.
+ * <p>
+ * Concurrent loads of the same chunk are coalesced into a single load. Saves of the same chunk are
+ * performed in the order they were requested, and loads requested while a save is pending
+ * are only started once the save is complete.
+ * 
+ * @author SyntaxError404
+ * 
+ */
+public class AsyncChunkIO {
+	
+	/** The number of threads used by the default executor if virtual threads are not supported */
+	public static final int POOL_SIZE = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+	
+	/**
+	 * Returns the default executor for asynchronous chunk I/O. This executor starts a new virtual thread
+	 * for each task if supported by the runtime (Java 21 or later). Otherwise, it uses a pool of at most
+	 * {@link #POOL_SIZE} daemon threads, and further tasks are queued until a thread becomes available.
+	 * In order to perform more blocking I/O at once on older runtimes, pass a custom executor instead
+	 * 
+	 * @return the default executor
+	 */
+	public static Executor defaultExecutor() {
+		return DefaultExecutor.INSTANCE;
+	}
+	
+	private final ConcurrentHashMap<Long, CompletableFuture<Chunk>> loads = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<Long, CompletableFuture<Void>> saves = new ConcurrentHashMap<>();
+	
+	/**
+	 * Loads a chunk asynchronously. If the same chunk is already being loaded, the pending load is returned instead
+	 * 
+	 * @param key the chunk's key
+	 * @param loader the function loading the chunk
+	 * @param executor the executor to load the chunk on
+	 * @return the chunk
+	 */
+	public CompletableFuture<Chunk> load(long key, Callable<Chunk> loader, Executor executor) {
+		CompletableFuture<Chunk> future = new CompletableFuture<>();
+		CompletableFuture<Chunk> pending = loads.putIfAbsent(key, future);
+		
+		if(pending != null)
+			return pending;
+		
+		Runnable task = () -> run(key, loads, future, loader);
+		
+		CompletableFuture<Void> save = saves.get(key);
+		
+		if(save == null)
+			execute(executor, task, key, loads, future);
+		
+		else save.whenComplete((result, error) -> execute(executor, task, key, loads, future));
+		
+		return future;
+	}
+	
+	/**
+	 * Saves a chunk asynchronously, after all previously requested saves of the same chunk are complete
+	 * 
+	 * @param key the chunk's key
+	 * @param saver the function saving the chunk
+	 * @param executor the executor to save the chunk on
+	 * @return a future completed once the chunk is saved
+	 */
+	public CompletableFuture<Void> save(long key, Callable<Void> saver, Executor executor) {
+		CompletableFuture<Void> future = new CompletableFuture<>();
+		CompletableFuture<Void> previous = saves.put(key, future);
+		
+		Runnable task = () -> run(key, saves, future, saver);
+		
+		if(previous == null)
+			execute(executor, task, key, saves, future);
+		
+		else previous.whenComplete((result, error) -> execute(executor, task, key, saves, future));
+		
+		return future;
+	}
+	
+	private static <T> void execute(Executor executor, Runnable task, long key,
+			ConcurrentHashMap<Long, CompletableFuture<T>> pending, CompletableFuture<T> future) {
+		try {
+			executor.execute(task);
+		} catch (RuntimeException e) {
+			pending.remove(key, future);
+			future.completeExceptionally(e);
+		}
+	}
+	
+	private static <T> void run(long key, ConcurrentHashMap<Long, CompletableFuture<T>> pending,
+			CompletableFuture<T> future, Callable<T> task) {
+		T result;
+		
+		try {
+			result = task.call();
+		} catch (Throwable e) {
+			pending.remove(key, future);
+			future.completeExceptionally(e);
+			return;
+		}
+		
+		// subsequent requests must not be coalesced into this one once the result is available
+		pending.remove(key, future);
+		future.complete(result);
+	}
+	
+	private static class DefaultExecutor {
+		
+		private static final Executor INSTANCE = create();
+		
+		private static Executor create() {
+			try {
+				// not available before Java 21
+				return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+			} catch (ReflectiveOperationException e) {
+				// bounded, so issuing many requests at once does not start a platform thread for each of them
+				ThreadPoolExecutor pool = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, 60, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<>(), task -> {
+						Thread thread = new Thread(task, "SyntaxNBT-ChunkIO");
+						thread.setDaemon(true);
+						return thread;
+					});
+				
+				pool.allowCoreThreadTimeOut(true);
+				
+				return pool;
+			}
+		}
+		
+	}
+	
+}
@@ -0,0 +1,225 @@
+/* MIT License
+ * 
+ * Copyright (c) 2022 SyntaxError404
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package at.syntaxerror.syntaxnbt.internal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import at.syntaxerror.syntaxnbt.NBTException;
+import at.syntaxerror.syntaxnbt.region.Chunk;
+import at.syntaxerror.syntaxnbt.region.RegionFile;
+import at.syntaxerror.syntaxnbt.region.RegionFolder;
+import at.syntaxerror.syntaxnbt.region.WorldChunk;
+
+/**
+ * A spliterator over all chunks within the region files of a world.
+ * <p>
+ * Each region file is divided into 1024 slots (one per chunk), and the spliterator covers a range
+ * of slots across all region files. Splitting happens between region files if possible, but also within
+ * region files, so the work is balanced even if only few region files are left. The required part
+ * of a region file is read at once and the file is closed immediately, so no file is kept open
+ * if the stream is not fully consumed. Chunks are not decoded until {@link Chunk#getData()} is called.
+ * 
+ * @author SyntaxError404
+ * 
+ */
+@SuppressWarnings("deprecation")
+public class ChunkSpliterator implements Spliterator<WorldChunk> {
+	
+	// don't split ranges smaller than this number of slots
+	private static final int MIN_SPLIT = 64;
+	
+	/**
+	 * Finds all region files within the given folders of a world
+	 * 
+	 * @param world the world directory
+	 * @param folders the folders to search in
+	 * @return the spliterator
+	 * @throws IOException if an I/O error occured
+	 */
+	public static ChunkSpliterator of(Path world, RegionFolder... folders) throws IOException {
+		List<RegionSource> sources = new ArrayList<>();
+		
+		for(RegionFolder folder : folders) {
+			Path directory = world.resolve(folder.getFolderName());
+			
+			if(!Files.isDirectory(directory))
+				continue;
+			
+			try(Stream<Path> files = Files.list(directory)) {
+				files.sorted()
+					.forEach(file -> {
+						int[] position = RegionUtil.regionPosition(file);
+						
+						if(position != null && file.getFileName().toString().endsWith(".mca"))
+							sources.add(new RegionSource(folder, file, position[0], position[1]));
+					});
+			}
+		}
+		
+		// sort by folder and position, so chunks of the same region are processed together
+		sources.sort(
+			Comparator.<RegionSource>comparingInt(source -> source.folder.ordinal())
+				.thenComparingInt(source -> source.regionZ)
+				.thenComparingInt(source -> source.regionX)
+		);
+		
+		return new ChunkSpliterator(sources, 0, sources.size() * 1024L);
+	}
+	
+	private final List<RegionSource> sources;
+	
+	private long position;
+	private final long end;
+	
+	// the currently loaded part of a region file
+	private int loadedSource = -1;
+	private int loadedStart;
+	private byte[][] loadedChunks;
+	private int[] loadedTimestamps;
+	
+	private ChunkSpliterator(List<RegionSource> sources, long position, long end) {
+		this.sources = sources;
+		this.position = position;
+		this.end = end;
+	}
+	
+	@Override
+	public boolean tryAdvance(Consumer<? super WorldChunk> action) {
+		while(position < end) {
+			int source = (int) (position / 1024);
+			int index = (int) (position % 1024);
+			
+			++position;
+			
+			if(source != loadedSource)
+				load(source, index);
+			
+			byte[] data = loadedChunks[index - loadedStart];
+			
+			if(data == null)
+				continue;
+			
+			RegionSource region = sources.get(source);
+			
+			action.accept(new WorldChunk(
+				region.folder,
+				region.regionX,
+				region.regionZ,
+				index,
+				loadedTimestamps[index - loadedStart],
+				new Chunk(data)
+			));
+			
+			return true;
+		}
+		
+		loadedChunks = null;
+		loadedTimestamps = null;
+		
+		return false;
+	}
+	
+	// reads the remaining chunks of the region file within this spliterator's range
+	private void load(int source, int start) {
+		int count = (int) Math.min(1024 - start, end - position + 1);
+		
+		loadedSource = source;
+		loadedStart = start;
+		loadedChunks = new byte[count][];
+		loadedTimestamps = new int[count];
+		
+		Path path = sources.get(source).path;
+		
+		try {
+			// empty region files are created by Minecraft occasionally
+			if(Files.size(path) < RegionUtil.HEADER_SIZE)
+				return;
+			
+			try(RegionFile file = new RegionFile(path)) {
+				for(int i = 0; i < count; ++i) {
+					int index = start + i;
+					
+					ByteBuffer data = file.readChunkData(index & 31, index >> 5);
+					
+					if(data == null)
+						continue;
+					
+					loadedChunks[i] = new byte[data.remaining()];
+					data.get(loadedChunks[i]);
+					
+					loadedTimestamps[i] = file.getTimestamp(index & 31, index >> 5);
+				}
+			}
+		} catch (IOException e) {
+			throw new NBTException("Failed to read region file " + path, e);
+		}
+	}
+	
+	@Override
+	public Spliterator<WorldChunk> trySplit() {
+		long remaining = end - position;
+		
+		if(remaining < 2 * MIN_SPLIT)
+			return null;
+		
+		long middle = position + remaining / 2;
+		
+		// split between region files if possible
+		long boundary = (middle + 512) / 1024 * 1024;
+		
+		if(boundary > position && boundary < end)
+			middle = boundary;
+		
+		ChunkSpliterator prefix = new ChunkSpliterator(sources, position, middle);
+		
+		position = middle;
+		
+		loadedSource = -1;
+		loadedChunks = null;
+		loadedTimestamps = null;
+		
+		return prefix;
+	}
+	
+	@Override
+	public long estimateSize() {
+		return end - position;
+	}
+	
+	@Override
+	public int characteristics() {
+		return ORDERED | NONNULL | IMMUTABLE;
+	}
+	
+	private static record RegionSource(RegionFolder folder, Path path, int regionX, int regionZ) { }
+	
+}
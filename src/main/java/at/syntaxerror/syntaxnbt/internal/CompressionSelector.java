@@ -0,0 +1,234 @@
+/* MIT License
+ * 
+ * Copyright (c) 2022 SyntaxError404
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package at.syntaxerror.syntaxnbt.internal;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import at.syntaxerror.syntaxnbt.NBTCompression;
+import at.syntaxerror.syntaxnbt.region.CompressionPolicy;
+import lombok.Getter;
+
+/**
+ * A utility class for choosing the compression scheme of chunks according to a {@link CompressionPolicy}
+ * 
+ * @author SyntaxError404
+ * 
+ */
+public class CompressionSelector {
+	
+	/** The maximum number of chunks used for measuring the compression schemes */
+	public static final int SAMPLE_SIZE = 8;
+	
+	private static final int SECTOR_SIZE = 4096;
+	
+	// chunk header: 4 bytes length, 1 byte compression scheme
+	private static final int HEADER_SIZE = 5;
+	
+	// estimated time required for reading or writing a single sector (~100MB/s)
+	private static final double SECTOR_COST_NANOS = 40_000;
+	
+	// how many percent more sectors than the smallest candidate the balanced policy accepts
+	private static final int BALANCED_TOLERANCE = 25;
+	
+	private static final int[] LEVELS = { Deflater.BEST_SPEED, 6, Deflater.BEST_COMPRESSION };
+	
+	/**
+	 * Measures the compression schemes on the given samples
+	 * 
+	 * @param policy the compression policy
+	 * @param fallback the default compression scheme. {@link NBTCompression#ZLIB_DICTIONARY} is only considered if this is
+	 * 	the default compression scheme, since it is not supported by Minecraft itself
+	 * @param strategy the compression strategy
+	 * @param samples the samples (uncompressed NBT data)
+	 * @return the selector
+	 */
+	public static CompressionSelector measure(CompressionPolicy policy, NBTCompression fallback, int strategy, List<byte[]> samples) {
+		List<Candidate> candidates = new ArrayList<>();
+		
+		for(NBTCompression compression : NBTCompression.values()) {
+			if(compression == NBTCompression.ZLIB_DICTIONARY && fallback != compression)
+				continue;
+			
+			if(compression == NBTCompression.NONE)
+				candidates.add(new Candidate(compression, Deflater.NO_COMPRESSION));
+			
+			else for(int level : LEVELS)
+				candidates.add(new Candidate(compression, level));
+		}
+		
+		// warm up, so the first candidates are not penalized
+		if(!samples.isEmpty())
+			for(Candidate candidate : candidates)
+				candidate.compression.decompress(ByteBuffer.wrap(
+					candidate.compression.compress(ByteBuffer.wrap(samples.get(0)), candidate.level, strategy)
+				));
+		
+		for(byte[] sample : samples) {
+			ByteBuffer input = ByteBuffer.wrap(sample);
+			
+			for(Candidate candidate : candidates) {
+				long start = System.nanoTime();
+				
+				byte[] compressed = candidate.compression.compress(input, candidate.level, strategy);
+				
+				long mid = System.nanoTime();
+				
+				candidate.compression.decompress(ByteBuffer.wrap(compressed));
+				
+				long end = System.nanoTime();
+				
+				candidate.uncompressedSize += sample.length;
+				candidate.compressedSize += compressed.length;
+				candidate.compressionTime += mid - start;
+				candidate.decompressionTime += end - mid;
+			}
+		}
+		
+		return new CompressionSelector(policy, samples.isEmpty() ? List.of() : Collections.unmodifiableList(candidates));
+	}
+	
+	private final CompressionPolicy policy;
+	
+	/**
+	 * Returns the measured candidates
+	 * 
+	 * @return the measured candidates
+	 */
+	@Getter
+	private final List<Candidate> candidates;
+	
+	private CompressionSelector(CompressionPolicy policy, List<Candidate> candidates) {
+		this.policy = policy;
+		this.candidates = candidates;
+	}
+	
+	/**
+	 * Chooses the most suitable compression scheme for a chunk
+	 * 
+	 * @param size the size of the uncompressed chunk data
+	 * @return the most suitable compression scheme, or {@code null} if no samples were measured
+	 */
+	public Candidate select(int size) {
+		if(candidates.isEmpty())
+			return null;
+		
+		long maxSectors = Long.MAX_VALUE;
+		
+		if(policy == CompressionPolicy.BALANCED) {
+			long minSectors = Long.MAX_VALUE;
+			
+			for(Candidate candidate : candidates)
+				minSectors = Math.min(minSectors, candidate.estimateSectors(size));
+			
+			maxSectors = minSectors + minSectors * BALANCED_TOLERANCE / 100;
+		}
+		
+		Candidate best = null;
+		double bestScore = Double.MAX_VALUE;
+		
+		for(Candidate candidate : candidates) {
+			long sectors = candidate.estimateSectors(size);
+			
+			if(sectors > maxSectors)
+				continue;
+			
+			double score = switch(policy) {
+			case FASTEST_LOAD ->	candidate.estimateDecompressionTime(size) + sectors * SECTOR_COST_NANOS;
+			case SMALLEST ->		sectors + candidate.estimateSize(size) / (double) SECTOR_SIZE * 1e-3;
+			case BALANCED ->		candidate.estimateTime(size);
+			};
+			
+			if(score < bestScore) {
+				bestScore = score;
+				best = candidate;
+			}
+		}
+		
+		return best;
+	}
+	
+	/**
+	 * A compression scheme and level, along with its measurements
+	 * 
+	 * @author SyntaxError404
+	 * 
+	 */
+	@Getter
+	public static class Candidate {
+		
+		/**
+		 * Returns the compression scheme
+		 * 
+		 * @return the compression scheme
+		 */
+		private final NBTCompression compression;
+		
+		/**
+		 * Returns the compression level
+		 * 
+		 * @return the compression level
+		 */
+		private final int level;
+		
+		private long uncompressedSize;
+		private long compressedSize;
+		private long compressionTime;
+		private long decompressionTime;
+		
+		private Candidate(NBTCompression compression, int level) {
+			this.compression = compression;
+			this.level = level;
+		}
+		
+		private double ratio() {
+			return compressedSize / (double) Math.max(1, uncompressedSize);
+		}
+		
+		private long estimateSize(int size) {
+			return (long) Math.ceil(size * ratio()) + HEADER_SIZE;
+		}
+		
+		private long estimateSectors(int size) {
+			return (estimateSize(size) + SECTOR_SIZE - 1) / SECTOR_SIZE;
+		}
+		
+		private double estimateDecompressionTime(int size) {
+			return size * (decompressionTime / (double) Math.max(1, uncompressedSize));
+		}
+		
+		private double estimateTime(int size) {
+			return size * ((compressionTime + decompressionTime) / (double) Math.max(1, uncompressedSize));
+		}
+		
+		@Override
+		public String toString() {
+			return compression + "[level=" + level + "]";
+		}
+		
+	}
+	
+}
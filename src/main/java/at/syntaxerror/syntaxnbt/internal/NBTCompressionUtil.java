@@ -22,10 +22,29 @@
  */
 package at.syntaxerror.syntaxnbt.internal;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
 
 import at.syntaxerror.syntaxnbt.NBTCompression;
+import at.syntaxerror.syntaxnbt.NBTDictionary;
+import at.syntaxerror.syntaxnbt.NBTException;
 import lombok.experimental.UtilityClass;
 
 /**
@@ -35,7 +54,31 @@ import lombok.experimental.UtilityClass;
  * 
  */
 @UtilityClass
+@SuppressWarnings("deprecation")
 public class NBTCompressionUtil {
+	
+	private static final int POOL_SIZE = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+	
+	private static final int GZIP_MAGIC = 0x8B1F;
+	
+	private static final int FHCRC = 2;
+	private static final int FEXTRA = 4;
+	private static final int FNAME = 8;
+	private static final int FCOMMENT = 16;
+	
+	private static final byte[] GZIP_HEADER = {
+		(byte) 0x1F, (byte) 0x8B,	// magic
+		8,							// compression method (deflate)
+		0,							// flags
+		0, 0, 0, 0,					// modification time
+		0,							// extra flags
+		(byte) 0xFF					// operating system (unknown)
+	};
+	
+	private static final Pool<Deflater> DEFLATERS = new Pool<>(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, false), Deflater::reset, Deflater::end);
+	private static final Pool<Deflater> RAW_DEFLATERS = new Pool<>(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, true), Deflater::reset, Deflater::end);
+	private static final Pool<Inflater> INFLATERS = new Pool<>(() -> new Inflater(false), Inflater::reset, Inflater::end);
+	private static final Pool<Inflater> RAW_INFLATERS = new Pool<>(() -> new Inflater(true), Inflater::reset, Inflater::end);
 
 	/**
 	 * Determines the compression of the stream.
@@ -68,4 +111,644 @@ public class NBTCompressionUtil {
 		return compression;
 	}
 	
+	/**
+	 * Takes a deflater from the pool (or creates a new one, if the pool is empty)
+	 * and configures it with the given level and strategy. The deflater must be
+	 * handed back via {@link #releaseDeflater(Deflater, boolean)} once it is no longer needed
+	 * 
+	 * @param level the compression level ({@code 0-9} or {@link Deflater#DEFAULT_COMPRESSION})
+	 * @param strategy the compression strategy (e.g. {@link Deflater#DEFAULT_STRATEGY})
+	 * @param nowrap whether to omit the zlib header and checksum (required for gzip)
+	 * @return the deflater
+	 */
+	public static Deflater acquireDeflater(int level, int strategy, boolean nowrap) {
+		Deflater deflater = (nowrap ? RAW_DEFLATERS : DEFLATERS).acquire();
+		
+		try {
+			deflater.setLevel(level);
+			deflater.setStrategy(strategy);
+		} catch (IllegalArgumentException e) {
+			releaseDeflater(deflater, nowrap);
+			throw new NBTException("Illegal compression settings", e);
+		}
+		
+		return deflater;
+	}
+	
+	/**
+	 * Hands a deflater acquired via {@link #acquireDeflater(int, int, boolean)} back to the pool
+	 * 
+	 * @param deflater the deflater
+	 * @param nowrap whether the deflater omits the zlib header and checksum
+	 */
+	public static void releaseDeflater(Deflater deflater, boolean nowrap) {
+		(nowrap ? RAW_DEFLATERS : DEFLATERS).release(deflater);
+	}
+	
+	/**
+	 * Takes an inflater from the pool (or creates a new one, if the pool is empty).
+	 * The inflater must be handed back via {@link #releaseInflater(Inflater, boolean)} once
+	 * it is no longer needed
+	 * 
+	 * @param nowrap whether the input lacks the zlib header and checksum (required for gzip)
+	 * @return the inflater
+	 */
+	public static Inflater acquireInflater(boolean nowrap) {
+		return (nowrap ? RAW_INFLATERS : INFLATERS).acquire();
+	}
+	
+	/**
+	 * Hands an inflater acquired via {@link #acquireInflater(boolean)} back to the pool
+	 * 
+	 * @param inflater the inflater
+	 * @param nowrap whether the inflater expects input without the zlib header and checksum
+	 */
+	public static void releaseInflater(Inflater inflater, boolean nowrap) {
+		(nowrap ? RAW_INFLATERS : INFLATERS).release(inflater);
+	}
+	
+	/**
+	 * Wraps a stream into a zlib compressor using a pooled deflater
+	 * 
+	 * @param stream the stream to write the compressed data to
+	 * @param level the compression level
+	 * @param strategy the compression strategy
+	 * @return the compressor stream
+	 * @throws IOException if an I/O error occured
+	 */
+	public static OutputStream newZlibOutputStream(OutputStream stream, int level, int strategy) throws IOException {
+		return new PooledDeflaterOutputStream(stream, acquireDeflater(level, strategy, false), false);
+	}
+
+	/**
+	 * Wraps a stream into a gzip compressor using a pooled deflater
+	 * 
+	 * @param stream the stream to write the compressed data to
+	 * @param level the compression level
+	 * @param strategy the compression strategy
+	 * @return the compressor stream
+	 * @throws IOException if an I/O error occured
+	 */
+	public static OutputStream newGZIPOutputStream(OutputStream stream, int level, int strategy) throws IOException {
+		return new PooledDeflaterOutputStream(stream, acquireDeflater(level, strategy, true), true);
+	}
+
+	/**
+	 * Wraps a stream into a zlib compressor using a pooled deflater and
+	 * the {@link NBTDictionary#getDefault() default preset dictionary}
+	 * 
+	 * @param stream the stream to write the compressed data to
+	 * @param level the compression level
+	 * @param strategy the compression strategy
+	 * @return the compressor stream
+	 * @throws IOException if an I/O error occured
+	 */
+	public static OutputStream newZlibDictionaryOutputStream(OutputStream stream, int level, int strategy) throws IOException {
+		byte[] dictionary = NBTDictionary.getDefault().getRawData();
+		
+		Deflater deflater = acquireDeflater(level, strategy, false);
+		deflater.setDictionary(dictionary);
+		
+		return new PooledDeflaterOutputStream(stream, deflater, false);
+	}
+
+	/**
+	 * Wraps a stream into a zlib decompressor using a pooled inflater.
+	 * Preset dictionaries are resolved via the {@link NBTDictionary#getDictionary(int) registry}
+	 * 
+	 * @param stream the stream to read the compressed data from
+	 * @return the decompressor stream
+	 * @throws IOException if an I/O error occured
+	 */
+	public static InputStream newZlibInputStream(InputStream stream) throws IOException {
+		return new PooledInflaterInputStream(stream, acquireInflater(false));
+	}
+
+	/**
+	 * Wraps a stream into a gzip decompressor using a pooled inflater.
+	 * Concatenated gzip members are decompressed one after another
+	 * 
+	 * @param stream the stream to read the compressed data from
+	 * @return the decompressor stream
+	 * @throws IOException if an I/O error occured
+	 */
+	public static InputStream newGZIPInputStream(InputStream stream) throws IOException {
+		return new PooledGZIPInputStream(stream, acquireInflater(true));
+	}
+	
+	/**
+	 * Compresses the remaining bytes of the buffer in one go, using a pooled deflater.
+	 * The position of {@code input} is not modified
+	 * 
+	 * @param compression the compression scheme
+	 * @param input the uncompressed data
+	 * @param level the compression level
+	 * @param strategy the compression strategy
+	 * @return the compressed data
+	 */
+	public static byte[] compress(NBTCompression compression, ByteBuffer input, int level, int strategy) {
+		input = input.duplicate();
+		
+		switch(compression) {
+		case NONE:
+			byte[] copy = new byte[input.remaining()];
+			input.get(copy);
+			return copy;
+			
+		case ZLIB:
+			return deflate(input, level, strategy, false, null);
+			
+		case ZLIB_DICTIONARY:
+			return deflate(input, level, strategy, false, NBTDictionary.getDefault());
+			
+		case GZIP:
+			return deflate(input, level, strategy, true, null);
+			
+		default:
+			throw new NBTException("Unsupported compression scheme: " + compression);
+		}
+	}
+	
+	/**
+	 * Decompresses the remaining bytes of the buffer in one go, using a pooled inflater.
+	 * The position of {@code input} is not modified
+	 * 
+	 * @param compression the compression scheme
+	 * @param input the compressed data
+	 * @return the decompressed data
+	 */
+	public static byte[] decompress(NBTCompression compression, ByteBuffer input) {
+		input = input.duplicate();
+		
+		switch(compression) {
+		case NONE:
+			byte[] copy = new byte[input.remaining()];
+			input.get(copy);
+			return copy;
+			
+		case ZLIB:
+		case ZLIB_DICTIONARY:
+			return inflateZlib(input);
+			
+		case GZIP:
+			return inflateGZIP(input);
+			
+		default:
+			throw new NBTException("Unsupported compression scheme: " + compression);
+		}
+	}
+	
+	private static byte[] deflate(ByteBuffer input, int level, int strategy, boolean gzip, NBTDictionary dictionary) {
+		Deflater deflater = acquireDeflater(level, strategy, gzip);
+		
+		try {
+			if(dictionary != null)
+				deflater.setDictionary(dictionary.getRawData());
+			
+			int size = input.remaining();
+			
+			// the deflated data is usually a lot smaller than the input
+			byte[] output = new byte[Math.max(64, size / 4)];
+			int pos = 0;
+			
+			CRC32 crc = null;
+			
+			if(gzip) {
+				crc = new CRC32();
+				crc.update(input.duplicate());
+				
+				System.arraycopy(GZIP_HEADER, 0, output, 0, GZIP_HEADER.length);
+				pos = GZIP_HEADER.length;
+			}
+			
+			deflater.setInput(input);
+			deflater.finish();
+			
+			while(!deflater.finished()) {
+				if(pos == output.length)
+					output = Arrays.copyOf(output, output.length * 2);
+				
+				pos += deflater.deflate(output, pos, output.length - pos);
+			}
+			
+			if(gzip) {
+				output = Arrays.copyOf(output, pos + 8);
+				
+				ByteBuffer.wrap(output, pos, 8)
+					.order(ByteOrder.LITTLE_ENDIAN)
+					.putInt((int) crc.getValue())
+					.putInt(size);
+				
+				return output;
+			}
+			
+			return Arrays.copyOf(output, pos);
+		} finally {
+			releaseDeflater(deflater, gzip);
+		}
+	}
+	
+	private static byte[] inflateZlib(ByteBuffer input) {
+		Inflater inflater = acquireInflater(false);
+		
+		try {
+			inflater.setInput(input);
+			
+			return inflate(inflater, new byte[Math.max(256, input.remaining() * 4)], 0, null);
+		} finally {
+			releaseInflater(inflater, false);
+		}
+	}
+	
+	private static byte[] inflateGZIP(ByteBuffer input) {
+		input.order(ByteOrder.LITTLE_ENDIAN);
+		
+		byte[] output = new byte[Math.max(256, input.remaining() * 4)];
+		int pos = 0;
+		
+		Inflater inflater = acquireInflater(true);
+		
+		try {
+			// gzip streams may consist of multiple concatenated members
+			do {
+				skipGZIPHeader(input);
+				
+				int start = pos;
+				
+				CRC32 crc = new CRC32();
+				
+				inflater.reset();
+				inflater.setInput(input);
+				
+				output = inflate(inflater, output, pos, crc);
+				pos = start + (int) inflater.getBytesWritten();
+				
+				if(input.remaining() < 8)
+					throw new NBTException("Unexpected end of gzip stream");
+				
+				if(input.getInt() != (int) crc.getValue())
+					throw new NBTException("Corrupt gzip stream (CRC32 mismatch)");
+				
+				if(input.getInt() != (int) inflater.getBytesWritten())
+					throw new NBTException("Corrupt gzip stream (size mismatch)");
+			} while(input.remaining() >= 2 && (input.getShort(input.position()) & 0xFFFF) == GZIP_MAGIC);
+			
+			return Arrays.copyOf(output, pos);
+		} finally {
+			releaseInflater(inflater, true);
+		}
+	}
+	
+	private static void skipGZIPHeader(ByteBuffer input) {
+		try {
+			if((input.getShort() & 0xFFFF) != GZIP_MAGIC)
+				throw new NBTException("Not in gzip format");
+			
+			if(input.get() != 8)
+				throw new NBTException("Unsupported gzip compression method");
+			
+			int flags = input.get() & 0xFF;
+			
+			input.position(input.position() + 6); // modification time, extra flags, operating system
+			
+			if((flags & FEXTRA) != 0)
+				input.position(input.position() + (input.getShort() & 0xFFFF));
+			
+			if((flags & FNAME) != 0)
+				while(input.get() != 0);
+			
+			if((flags & FCOMMENT) != 0)
+				while(input.get() != 0);
+			
+			if((flags & FHCRC) != 0)
+				input.getShort();
+		} catch (RuntimeException e) {
+			if(e instanceof NBTException)
+				throw e;
+			
+			throw new NBTException("Unexpected end of gzip header", e);
+		}
+	}
+	
+	/**
+	 * Inflates the whole input of the inflater into the output buffer (starting at {@code pos}),
+	 * growing the buffer as necessary
+	 */
+	private static byte[] inflate(Inflater inflater, byte[] output, int pos, CRC32 crc) {
+		try {
+			int start = pos;
+			
+			while(!inflater.finished()) {
+				if(pos == output.length)
+					output = Arrays.copyOf(output, output.length * 2);
+				
+				int n = inflater.inflate(output, pos, output.length - pos);
+				
+				if(n == 0) {
+					if(inflater.needsDictionary()) {
+						inflater.setDictionary(NBTDictionary.getDictionary(inflater.getAdler()).getRawData());
+						continue;
+					}
+					
+					if(inflater.needsInput())
+						throw new NBTException("Unexpected end of compressed data");
+				}
+				
+				pos += n;
+			}
+			
+			if(crc != null) {
+				crc.update(output, start, pos - start);
+				return output;
+			}
+			
+			return Arrays.copyOf(output, pos);
+		} catch (DataFormatException e) {
+			throw new NBTException("Corrupt compressed data", e);
+		}
+	}
+	
+	private static class PooledDeflaterOutputStream extends DeflaterOutputStream {
+		
+		private final boolean gzip;
+		private final CRC32 crc;
+		
+		private boolean closed;
+		
+		public PooledDeflaterOutputStream(OutputStream out, Deflater deflater, boolean gzip) throws IOException {
+			super(out, deflater, 8192);
+			
+			this.gzip = gzip;
+			
+			if(gzip) {
+				crc = new CRC32();
+				
+				try {
+					out.write(GZIP_HEADER);
+				} catch (IOException | RuntimeException e) {
+					// the stream is never handed out, so it cannot be closed by the caller
+					releaseDeflater(deflater, true);
+					throw e;
+				}
+			}
+			else crc = null;
+		}
+		
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			super.write(b, off, len);
+			
+			if(gzip)
+				crc.update(b, off, len);
+		}
+		
+		@Override
+		public void finish() throws IOException {
+			if(def.finished())
+				return;
+			
+			super.finish();
+			
+			if(gzip) {
+				byte[] trailer = new byte[8];
+				
+				ByteBuffer.wrap(trailer)
+					.order(ByteOrder.LITTLE_ENDIAN)
+					.putInt((int) crc.getValue())
+					.putInt((int) def.getBytesRead());
+				
+				out.write(trailer);
+			}
+		}
+		
+		@Override
+		public void close() throws IOException {
+			if(closed)
+				return;
+			
+			closed = true;
+			
+			try {
+				finish();
+				out.close();
+			} finally {
+				releaseDeflater(def, gzip);
+			}
+		}
+		
+	}
+	
+	private static class PooledInflaterInputStream extends InflaterInputStream {
+		
+		private boolean closed;
+		
+		public PooledInflaterInputStream(InputStream in, Inflater inflater) {
+			super(in, inflater, 8192);
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			
+			if(n == -1 && inf.needsDictionary()) {
+				inf.setDictionary(NBTDictionary.getDictionary(inf.getAdler()).getRawData());
+				n = super.read(b, off, len);
+			}
+			
+			return n;
+		}
+		
+		@Override
+		public void close() throws IOException {
+			if(closed)
+				return;
+			
+			closed = true;
+			
+			try {
+				in.close();
+			} finally {
+				releaseInflater(inf, false);
+			}
+		}
+		
+	}
+	
+	private static class PooledGZIPInputStream extends InflaterInputStream {
+		
+		private final CRC32 crc = new CRC32();
+		
+		// input read past the end of a member's compressed data (buf[pos] to buf[end])
+		private int pos;
+		private int end;
+		
+		private boolean eof;
+		private boolean closed;
+		
+		public PooledGZIPInputStream(InputStream in, Inflater inflater) throws IOException {
+			super(in, inflater, 8192);
+			
+			try {
+				readHeader(true);
+			} catch (IOException | RuntimeException e) {
+				// the stream is never handed out, so it cannot be closed by the caller
+				releaseInflater(inflater, true);
+				throw e;
+			}
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			while(!eof) {
+				int n = super.read(b, off, len);
+				
+				if(n != -1) {
+					crc.update(b, off, n);
+					return n;
+				}
+				
+				readTrailer();
+			}
+			
+			return -1;
+		}
+		
+		private void readTrailer() throws IOException {
+			end = len;
+			pos = end - inf.getRemaining();
+			
+			if(readInt() != (int) crc.getValue())
+				throw new ZipException("Corrupt gzip stream (CRC32 mismatch)");
+			
+			if(readInt() != (int) inf.getBytesWritten())
+				throw new ZipException("Corrupt gzip stream (size mismatch)");
+			
+			// gzip streams may consist of multiple concatenated members
+			if(!readHeader(false)) {
+				eof = true;
+				return;
+			}
+			
+			crc.reset();
+			inf.reset();
+			
+			if(pos < end)
+				inf.setInput(buf, pos, end - pos);
+		}
+		
+		// returns false if there is no further member
+		private boolean readHeader(boolean first) throws IOException {
+			int b0 = next();
+			int b1 = b0 == -1 ? -1 : next();
+			
+			if(b1 == -1 || ((b1 << 8) | b0) != GZIP_MAGIC) {
+				if(first)
+					throw new ZipException("Not in gzip format");
+				
+				return false;
+			}
+			
+			if(require() != 8)
+				throw new ZipException("Unsupported gzip compression method");
+			
+			int flags = require();
+			
+			discard(6); // modification time, extra flags, operating system
+			
+			if((flags & FEXTRA) != 0)
+				discard(require() | (require() << 8));
+			
+			if((flags & FNAME) != 0)
+				while(require() != 0);
+			
+			if((flags & FCOMMENT) != 0)
+				while(require() != 0);
+			
+			if((flags & FHCRC) != 0)
+				discard(2);
+			
+			return true;
+		}
+		
+		private int readInt() throws IOException {
+			return require() | (require() << 8) | (require() << 16) | (require() << 24);
+		}
+		
+		private void discard(int n) throws IOException {
+			while(n-- > 0)
+				require();
+		}
+		
+		private int require() throws IOException {
+			int b = next();
+			
+			if(b == -1)
+				throw new EOFException("Unexpected end of gzip stream");
+			
+			return b;
+		}
+		
+		// the input not consumed by the inflater is read first
+		private int next() throws IOException {
+			return pos < end
+				? buf[pos++] & 0xFF
+				: in.read();
+		}
+		
+		@Override
+		public void close() throws IOException {
+			if(closed)
+				return;
+			
+			closed = true;
+			
+			try {
+				in.close();
+			} finally {
+				releaseInflater(inf, true);
+			}
+		}
+		
+	}
+	
+	/**
+	 * A bounded pool of (native) zlib contexts, shared by all threads
+	 */
+	private static class Pool<T> {
+		
+		private final Queue<T> pool = new ConcurrentLinkedQueue<>();
+		private final AtomicInteger size = new AtomicInteger();
+		
+		private final Supplier<T> factory;
+		private final Consumer<T> reset;
+		private final Consumer<T> dispose;
+		
+		public Pool(Supplier<T> factory, Consumer<T> reset, Consumer<T> dispose) {
+			this.factory = factory;
+			this.reset = reset;
+			this.dispose = dispose;
+		}
+		
+		public T acquire() {
+			T value = pool.poll();
+			
+			if(value == null)
+				return factory.get();
+			
+			size.decrementAndGet();
+			return value;
+		}
+		
+		public void release(T value) {
+			reset.accept(value);
+			
+			if(size.incrementAndGet() > POOL_SIZE) {
+				size.decrementAndGet();
+				dispose.accept(value);
+			}
+			else pool.offer(value);
+		}
+		
+	}
+	
 }
@@ -0,0 +1,336 @@
+/* MIT License
+ * 
+ * Copyright (c) 2022 SyntaxError404
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package at.syntaxerror.syntaxnbt.internal;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import at.syntaxerror.syntaxnbt.NBTException;
+import at.syntaxerror.syntaxnbt.NBTUtil;
+import at.syntaxerror.syntaxnbt.tag.Tag;
+import at.syntaxerror.syntaxnbt.tag.TagByte;
+import at.syntaxerror.syntaxnbt.tag.TagCompound;
+import at.syntaxerror.syntaxnbt.tag.TagDouble;
+import at.syntaxerror.syntaxnbt.tag.TagFloat;
+import at.syntaxerror.syntaxnbt.tag.TagInt;
+import at.syntaxerror.syntaxnbt.tag.TagList;
+import at.syntaxerror.syntaxnbt.tag.TagLong;
+import at.syntaxerror.syntaxnbt.tag.TagShort;
+import at.syntaxerror.syntaxnbt.tag.TagType;
+import lombok.experimental.UtilityClass;
+
+/**
+ * A utility class for overwriting fixed-width numbers within serialized (uncompressed) NBT data,
+ * without deserializing it.
+ * <p>
+ * Paths consist of compound keys separated by dots, each optionally followed by
+ * list indices in square brackets (e.g. {@code Level.InhabitedTime} or {@code sections[0].Y}).
+ * 
+ * @author SyntaxError404
+ * 
+ */
+@UtilityClass
+public class NBTPatcher {
+	
+	/**
+	 * Overwrites a number within serialized NBT data. The number keeps its type, i.e. the
+	 * value is converted to the type of the existing number (e.g. {@link Number#intValue()} for {@code TAG_Int}).
+	 * The buffer's position is not changed
+	 * 
+	 * @param nbt the serialized NBT data (a named root compound), starting at the buffer's position
+	 * @param path the path of the number
+	 * @param value the new value
+	 * @return whether the number was found
+	 * @throws NBTException if the path refers to a tag that is not a number, or if the data is malformed
+	 */
+	public static boolean patch(ByteBuffer nbt, String path, Number value) {
+		Location location;
+		
+		try {
+			location = locate(nbt, parse(path));
+		} catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+			throw new NBTException("Unexpected end of NBT data", e);
+		}
+		
+		if(location == null)
+			return false;
+		
+		int position = location.position;
+		
+		switch(TagType.getTypeFromId(location.type)) {
+		case BYTE:		nbt.put(position, value.byteValue());				break;
+		case SHORT:		nbt.putShort(position, value.shortValue());			break;
+		case INT:		nbt.putInt(position, value.intValue());				break;
+		case LONG:		nbt.putLong(position, value.longValue());			break;
+		case FLOAT:		nbt.putFloat(position, value.floatValue());			break;
+		case DOUBLE:	nbt.putDouble(position, value.doubleValue());		break;
+		
+		default: throw new NBTException("Path does not refer to a number: " + path);
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Overwrites a number within a compound tag, using the same paths and conversion rules as
+	 * {@link #patch(ByteBuffer, String, Number)}
+	 * 
+	 * @param root the root compound
+	 * @param path the path of the number
+	 * @param value the new value
+	 * @return whether the number was found
+	 * @throws NBTException if the path refers to a tag that is not a number
+	 */
+	public static boolean patch(TagCompound root, String path, Number value) {
+		Tag<?> tag = root;
+		
+		for(Segment segment : parse(path)) {
+			if(!(tag instanceof TagCompound compound) || (tag = compound.get(segment.name, null)) == null)
+				return false;
+			
+			for(int index : segment.indices) {
+				if(!(tag instanceof TagList<?> list) || index >= list.size())
+					return false;
+				
+				tag = list.get(index);
+			}
+		}
+		
+		if(tag instanceof TagByte number)			number.setValue(value.byteValue());
+		else if(tag instanceof TagShort number)		number.setValue(value.shortValue());
+		else if(tag instanceof TagInt number)		number.setValue(value.intValue());
+		else if(tag instanceof TagLong number)		number.setValue(value.longValue());
+		else if(tag instanceof TagFloat number)		number.setValue(value.floatValue());
+		else if(tag instanceof TagDouble number)	number.setValue(value.doubleValue());
+		
+		else throw new NBTException("Path does not refer to a number: " + path);
+		
+		return true;
+	}
+	
+	// finds the payload of the tag at the given path, or returns null if there is no such tag
+	private static Location locate(ByteBuffer nbt, Segment[] path) {
+		int position = nbt.position();
+		
+		if(nbt.get(position) != TagType.COMPOUND.getId())
+			throw new NBTException("Invalid ID for TAG_Compound");
+		
+		// skip the root's name
+		position += 3 + Short.toUnsignedInt(nbt.getShort(position + 1));
+		
+		int type = TagType.COMPOUND.getId();
+		
+		for(Segment segment : path) {
+			if(type != TagType.COMPOUND.getId())
+				return null;
+			
+			// find the key within the compound, skipping all other entries
+			while(true) {
+				byte child = nbt.get(position);
+				
+				if(child == TagType.END.getId())
+					return null;
+				
+				int length = Short.toUnsignedInt(nbt.getShort(position + 1));
+				int payload = position + 3 + length;
+				
+				if(length == segment.key.length && equals(nbt, position + 3, segment.key)) {
+					type = child;
+					position = payload;
+					break;
+				}
+				
+				position = skip(nbt, child, payload, 0);
+			}
+			
+			for(int index : segment.indices) {
+				if(type != TagType.LIST.getId())
+					return null;
+				
+				byte element = nbt.get(position);
+				int size = nbt.getInt(position + 1);
+				
+				if(index >= size)
+					return null;
+				
+				position += 5;
+				
+				int width = width(element);
+				
+				if(width > 0)
+					position += index * width;
+				
+				else for(int i = 0; i < index; ++i)
+					position = skip(nbt, element, position, 0);
+				
+				type = element;
+			}
+		}
+		
+		return new Location(type, position);
+	}
+	
+	private static boolean equals(ByteBuffer nbt, int position, byte[] key) {
+		for(int i = 0; i < key.length; ++i)
+			if(nbt.get(position + i) != key[i])
+				return false;
+		
+		return true;
+	}
+	
+	// returns the position after the payload of a tag
+	private static int skip(ByteBuffer nbt, byte type, int position, int depth) {
+		if(depth > NBTUtil.MAX_DEPTH)
+			throw new NBTException("Maximum depth exceeded");
+		
+		switch(type) {
+		case 1: return position + 1;
+		case 2: return position + 2;
+		case 3: return position + 4;
+		case 4: return position + 8;
+		case 5: return position + 4;
+		case 6: return position + 8;
+		case 7: return position + 4 + checkSize(nbt.getInt(position));
+		case 8: return position + 2 + Short.toUnsignedInt(nbt.getShort(position));
+		case 9: {
+			byte element = nbt.get(position);
+			int size = nbt.getInt(position + 1);
+			
+			position += 5;
+			
+			int width = width(element);
+			
+			// fixed-size elements can be skipped at once
+			if(width > 0)
+				return position + checkSize(size) * width;
+			
+			for(int i = 0; i < size; ++i)
+				position = skip(nbt, element, position, depth + 1);
+			
+			return position;
+		}
+		case 10:
+			while(true) {
+				byte child = nbt.get(position);
+				
+				if(child == TagType.END.getId())
+					return position + 1;
+				
+				position = skip(nbt, child, position + 3 + Short.toUnsignedInt(nbt.getShort(position + 1)), depth + 1);
+			}
+		case 11: return position + 4 + checkSize(nbt.getInt(position)) * 4;
+		case 12: return position + 4 + checkSize(nbt.getInt(position)) * 8;
+		
+		default: throw new NBTException("Invalid tag type: " + type);
+		}
+	}
+	
+	private static int width(byte type) {
+		return switch(type) {
+		case 0, 1 -> type; // empty lists have type TAG_End
+		case 2 -> 2;
+		case 3, 5 -> 4;
+		case 4, 6 -> 8;
+		default -> 0;
+		};
+	}
+	
+	private static int checkSize(int size) {
+		if(size < 0)
+			throw new NBTException("Invalid size: " + size);
+		
+		return size;
+	}
+	
+	private static Segment[] parse(String path) {
+		List<Segment> segments = new ArrayList<>();
+		
+		for(String part : path.split("\\.", -1)) {
+			int bracket = part.indexOf('[');
+			
+			String name = bracket == -1 ? part : part.substring(0, bracket);
+			
+			List<Integer> indices = new ArrayList<>();
+			
+			while(bracket != -1) {
+				int end = part.indexOf(']', bracket);
+				
+				if(end == -1)
+					throw new NBTException("Invalid path: " + path);
+				
+				try {
+					indices.add(Integer.parseUnsignedInt(part.substring(bracket + 1, end)));
+				} catch (NumberFormatException e) {
+					throw new NBTException("Invalid path: " + path, e);
+				}
+				
+				bracket = end + 1 == part.length() ? -1 : end + 1;
+				
+				if(bracket != -1 && part.charAt(bracket) != '[')
+					throw new NBTException("Invalid path: " + path);
+			}
+			
+			if(name.isEmpty())
+				throw new NBTException("Invalid path: " + path);
+			
+			segments.add(new Segment(name, encode(name), indices.stream().mapToInt(Integer::intValue).toArray()));
+		}
+		
+		return segments.toArray(Segment[]::new);
+	}
+	
+	// modified UTF-8 as written by DataOutput.writeUTF (differs from UTF-8 for NUL and supplementary characters only)
+	private static byte[] encode(String name) {
+		if(name.indexOf('\0') == -1 && name.codePoints().allMatch(c -> c < 0x10000))
+			return name.getBytes(StandardCharsets.UTF_8);
+		
+		byte[] bytes = new byte[name.length() * 3];
+		int length = 0;
+		
+		for(char c : name.toCharArray())
+			if(c != 0 && c < 0x80)
+				bytes[length++] = (byte) c;
+			
+			else if(c < 0x800) {
+				bytes[length++] = (byte) (0xC0 | (c >> 6));
+				bytes[length++] = (byte) (0x80 | (c & 0x3F));
+			}
+			
+			else {
+				bytes[length++] = (byte) (0xE0 | (c >> 12));
+				bytes[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				bytes[length++] = (byte) (0x80 | (c & 0x3F));
+			}
+		
+		return Arrays.copyOf(bytes, length);
+	}
+	
+	private static record Segment(String name, byte[] key, int[] indices) { }
+	
+	private static record Location(int type, int position) { }
+	
+}
@@ -0,0 +1,370 @@
+/* MIT License
+ * 
+ * Copyright (c) 2022 SyntaxError404
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package at.syntaxerror.syntaxnbt.internal;
+
+import at.syntaxerror.syntaxnbt.NBTException;
+import lombok.experimental.UtilityClass;
+
+/**
+ * A utility class for packing and unpacking fixed-width unsigned integers into arrays of longs,
+ * as used by Minecraft for block states, biomes, and heightmaps.
+ * <p>
+ * Two layouts are supported: In the <i>spanning</i> layout (used before Minecraft 1.16), entries are packed
+ * back to back and may span two longs. In the <i>non-spanning</i> layout (used since Minecraft 1.16), each long
+ * holds {@code 64 / bits} entries, and the remaining high bits are left unused.
+ * Entries are stored starting at the least significant bits in both layouts.
+ * If {@code bits} is a power of two, both layouts are identical.
+ * 
+ * @author SyntaxError404
+ * 
+ */
+@UtilityClass
+public class PackedBits {
+	
+	/**
+	 * Returns the number of bits required to store indices into a palette of the given size
+	 * 
+	 * @param paletteSize the size of the palette
+	 * @return the number of bits
+	 */
+	public static int bitsFor(int paletteSize) {
+		return Math.max(1, 32 - Integer.numberOfLeadingZeros(paletteSize - 1));
+	}
+	
+	/**
+	 * Returns the number of longs required to store the given number of entries
+	 * 
+	 * @param count the number of entries
+	 * @param bits the number of bits per entry
+	 * @param spanning whether entries may span two longs
+	 * @return the number of longs
+	 */
+	public static int length(int count, int bits, boolean spanning) {
+		checkBits(bits, 32);
+		
+		if(spanning)
+			return (int) ((count * (long) bits + 63) >>> 6);
+		
+		int perLong = 64 / bits;
+		
+		return (count + perLong - 1) / perLong;
+	}
+	
+	/**
+	 * Unpacks entries into an {@code int[]}. The number of entries is given by the length of {@code out}
+	 * 
+	 * @param data the packed data
+	 * @param bits the number of bits per entry ({@code 1-32})
+	 * @param spanning whether entries may span two longs
+	 * @param out the array to store the entries in
+	 */
+	public static void unpack(long[] data, int bits, boolean spanning, int[] out) {
+		checkLength(data, out.length, bits, spanning, 32);
+		
+		int count = out.length;
+		long mask = (1L << bits) - 1;
+		
+		if(spanning && (64 % bits) != 0) {
+			long bit = 0;
+			
+			for(int i = 0; i < count; ++i, bit += bits) {
+				int index = (int) (bit >>> 6);
+				int offset = (int) bit & 63;
+				
+				long value = data[index] >>> offset;
+				
+				if(offset + bits > 64)
+					value |= data[index + 1] << (64 - offset);
+				
+				out[i] = (int) (value & mask);
+			}
+			
+			return;
+		}
+		
+		int perLong = 64 / bits;
+		int full = count / perLong;
+		
+		int i = 0;
+		
+		// common widths use constant shifts, which allows the inner loops to be unrolled
+		switch(bits) {
+		case 4:
+			for(int w = 0; w < full; ++w) {
+				// 32-bit shifts are cheaper, and entries never cross the halves of a long
+				int low = (int) data[w];
+				int high = (int) (data[w] >>> 32);
+				
+				for(int s = 0; s < 32; s += 4)
+					out[i++] = (low >>> s) & 0xF;
+				
+				for(int s = 0; s < 32; s += 4)
+					out[i++] = (high >>> s) & 0xF;
+			}
+			break;
+		case 5:
+			for(int w = 0; w < full; ++w) {
+				long word = data[w];
+				
+				for(int s = 0; s < 60; s += 5)
+					out[i++] = (int) (word >>> s) & 0x1F;
+			}
+			break;
+		case 6:
+			for(int w = 0; w < full; ++w) {
+				long word = data[w];
+				
+				for(int s = 0; s < 60; s += 6)
+					out[i++] = (int) (word >>> s) & 0x3F;
+			}
+			break;
+		case 7:
+			for(int w = 0; w < full; ++w) {
+				long word = data[w];
+				
+				for(int s = 0; s < 63; s += 7)
+					out[i++] = (int) (word >>> s) & 0x7F;
+			}
+			break;
+		case 8:
+			for(int w = 0; w < full; ++w) {
+				int low = (int) data[w];
+				int high = (int) (data[w] >>> 32);
+				
+				for(int s = 0; s < 32; s += 8)
+					out[i++] = (low >>> s) & 0xFF;
+				
+				for(int s = 0; s < 32; s += 8)
+					out[i++] = (high >>> s) & 0xFF;
+			}
+			break;
+		default:
+			for(int w = 0; w < full; ++w) {
+				long word = data[w];
+				
+				for(int j = 0; j < perLong; ++j, word >>>= bits)
+					out[i++] = (int) (word & mask);
+			}
+			break;
+		}
+		
+		// remaining entries in the last, partially filled long
+		if(i < count)
+			for(long word = data[full]; i < count; word >>>= bits)
+				out[i++] = (int) (word & mask);
+	}
+	
+	/**
+	 * Unpacks entries into a {@code short[]}. The number of entries is given by the length of {@code out}.
+	 * Entries with more than 15 bits are stored as their two's complement
+	 * 
+	 * @param data the packed data
+	 * @param bits the number of bits per entry ({@code 1-16})
+	 * @param spanning whether entries may span two longs
+	 * @param out the array to store the entries in
+	 */
+	public static void unpack(long[] data, int bits, boolean spanning, short[] out) {
+		checkLength(data, out.length, bits, spanning, 16);
+		
+		int count = out.length;
+		long mask = (1L << bits) - 1;
+		
+		if(spanning && (64 % bits) != 0) {
+			long bit = 0;
+			
+			for(int i = 0; i < count; ++i, bit += bits) {
+				int index = (int) (bit >>> 6);
+				int offset = (int) bit & 63;
+				
+				long value = data[index] >>> offset;
+				
+				if(offset + bits > 64)
+					value |= data[index + 1] << (64 - offset);
+				
+				out[i] = (short) (value & mask);
+			}
+			
+			return;
+		}
+		
+		int perLong = 64 / bits;
+		int full = count / perLong;
+		
+		int i = 0;
+		
+		switch(bits) {
+		case 4:
+			for(int w = 0; w < full; ++w) {
+				int low = (int) data[w];
+				int high = (int) (data[w] >>> 32);
+				
+				for(int s = 0; s < 32; s += 4)
+					out[i++] = (short) ((low >>> s) & 0xF);
+				
+				for(int s = 0; s < 32; s += 4)
+					out[i++] = (short) ((high >>> s) & 0xF);
+			}
+			break;
+		case 8:
+			for(int w = 0; w < full; ++w) {
+				int low = (int) data[w];
+				int high = (int) (data[w] >>> 32);
+				
+				for(int s = 0; s < 32; s += 8)
+					out[i++] = (short) ((low >>> s) & 0xFF);
+				
+				for(int s = 0; s < 32; s += 8)
+					out[i++] = (short) ((high >>> s) & 0xFF);
+			}
+			break;
+		default:
+			for(int w = 0; w < full; ++w) {
+				long word = data[w];
+				
+				for(int j = 0; j < perLong; ++j, word >>>= bits)
+					out[i++] = (short) (word & mask);
+			}
+			break;
+		}
+		
+		if(i < count)
+			for(long word = data[full]; i < count; word >>>= bits)
+				out[i++] = (short) (word & mask);
+	}
+	
+	/**
+	 * Packs entries from an {@code int[]}
+	 * 
+	 * @param values the entries
+	 * @param bits the number of bits per entry ({@code 1-32})
+	 * @param spanning whether entries may span two longs
+	 * @return the packed data
+	 * @throws NBTException if an entry does not fit into the given number of bits
+	 */
+	public static long[] pack(int[] values, int bits, boolean spanning) {
+		long[] data = new long[length(values.length, bits, spanning)];
+		
+		long mask = (1L << bits) - 1;
+		
+		if(spanning && (64 % bits) != 0) {
+			long bit = 0;
+			
+			for(int i = 0; i < values.length; ++i, bit += bits) {
+				long value = check(values[i] & 0xFFFFFFFFL, mask);
+				
+				int index = (int) (bit >>> 6);
+				int offset = (int) bit & 63;
+				
+				data[index] |= value << offset;
+				
+				if(offset + bits > 64)
+					data[index + 1] = value >>> (64 - offset);
+			}
+			
+			return data;
+		}
+		
+		int perLong = 64 / bits;
+		
+		for(int w = 0, i = 0; i < values.length; ++w) {
+			long word = 0;
+			int end = Math.min(values.length, i + perLong);
+			
+			for(int shift = 0; i < end; ++i, shift += bits)
+				word |= check(values[i] & 0xFFFFFFFFL, mask) << shift;
+			
+			data[w] = word;
+		}
+		
+		return data;
+	}
+	
+	/**
+	 * Packs entries from a {@code short[]}. Entries are treated as unsigned
+	 * 
+	 * @param values the entries
+	 * @param bits the number of bits per entry ({@code 1-16})
+	 * @param spanning whether entries may span two longs
+	 * @return the packed data
+	 * @throws NBTException if an entry does not fit into the given number of bits
+	 */
+	public static long[] pack(short[] values, int bits, boolean spanning) {
+		checkBits(bits, 16);
+		
+		long[] data = new long[length(values.length, bits, spanning)];
+		
+		long mask = (1L << bits) - 1;
+		
+		if(spanning && (64 % bits) != 0) {
+			long bit = 0;
+			
+			for(int i = 0; i < values.length; ++i, bit += bits) {
+				long value = check(values[i] & 0xFFFFL, mask);
+				
+				int index = (int) (bit >>> 6);
+				int offset = (int) bit & 63;
+				
+				data[index] |= value << offset;
+				
+				if(offset + bits > 64)
+					data[index + 1] = value >>> (64 - offset);
+			}
+			
+			return data;
+		}
+		
+		int perLong = 64 / bits;
+		
+		for(int w = 0, i = 0; i < values.length; ++w) {
+			long word = 0;
+			int end = Math.min(values.length, i + perLong);
+			
+			for(int shift = 0; i < end; ++i, shift += bits)
+				word |= check(values[i] & 0xFFFFL, mask) << shift;
+			
+			data[w] = word;
+		}
+		
+		return data;
+	}
+	
+	private static long check(long value, long mask) {
+		if((value & ~mask) != 0)
+			throw new NBTException("Value " + value + " does not fit into " + Long.bitCount(mask) + " bits");
+		
+		return value;
+	}
+	
+	private static void checkBits(int bits, int max) {
+		if(bits < 1 || bits > max)
+			throw new NBTException("Bits per entry must be between 1 and " + max);
+	}
+	
+	private static void checkLength(long[] data, int count, int bits, boolean spanning, int max) {
+		checkBits(bits, max);
+		
+		if(data.length < length(count, bits, spanning))
+			throw new NBTException("Packed data is too short for " + count + " entries");
+	}
+	
+}
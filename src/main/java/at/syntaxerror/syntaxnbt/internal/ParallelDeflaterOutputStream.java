@@ -0,0 +1,327 @@
+/* MIT License
+ * 
+ * Copyright (c) 2022 SyntaxError404
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package at.syntaxerror.syntaxnbt.internal;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+import java.util.zip.Deflater;
+
+import at.syntaxerror.syntaxnbt.NBTDictionary;
+
+/**
+ * An output stream compressing its data on multiple threads (similar to <i>pigz</i>).
+ * <p>
+ * The data is split into blocks of {@link #BLOCK_SIZE} bytes, which are deflated concurrently.
+ * Each block uses the last 32KiB of its predecessor as a preset dictionary and is terminated
+ * by a sync flush, so the concatenated blocks form one single, standard deflate stream.
+ * Depending on the framing, the result is either a single-member gzip stream or a zlib stream
+ * (optionally using a {@link NBTDictionary preset dictionary}), both of which can be read by {@link java.util.zip.GZIPInputStream} and
+ * {@link java.util.zip.InflaterInputStream} respectively.
+ * 
+ * @author SyntaxError404
+ * 
+ */
+public class ParallelDeflaterOutputStream extends OutputStream {
+	
+	/** The number of uncompressed bytes per block */
+	public static final int BLOCK_SIZE = 128 * 1024;
+	
+	private static final int DICTIONARY_SIZE = 32 * 1024;
+	
+	private static final int MAX_PENDING = Runtime.getRuntime().availableProcessors() * 2;
+	
+	private static final byte[] GZIP_HEADER = {
+		(byte) 0x1F, (byte) 0x8B, 8, 0, 0, 0, 0, 0, 0, (byte) 0xFF
+	};
+	
+	private final OutputStream out;
+	private final Executor executor;
+	
+	private final boolean gzip;
+	private final int level;
+	private final int strategy;
+	
+	private final Checksum checksum;
+	
+	private final Deque<CompletableFuture<byte[]>> pending = new ArrayDeque<>();
+	
+	private byte[] block = new byte[BLOCK_SIZE];
+	private int count;
+	
+	private byte[] dictionary;
+	
+	private long size;
+	
+	private boolean closed;
+	
+	/**
+	 * Constructs a new parallel compressor stream
+	 * 
+	 * @param out the stream to write the compressed data to
+	 * @param gzip whether to use gzip ({@code true}) or zlib ({@code false}) framing
+	 * @param level the compression level
+	 * @param strategy the compression strategy
+	 * @param executor the executor to compress the blocks on
+	 * @throws IOException if an I/O error occured
+	 */
+	public ParallelDeflaterOutputStream(OutputStream out, boolean gzip, int level, int strategy, Executor executor) throws IOException {
+		this(out, gzip, null, level, strategy, executor);
+	}
+	
+	/**
+	 * Constructs a new parallel compressor stream, using zlib framing and a preset dictionary
+	 * 
+	 * @param out the stream to write the compressed data to
+	 * @param dictionary the preset dictionary
+	 * @param level the compression level
+	 * @param strategy the compression strategy
+	 * @param executor the executor to compress the blocks on
+	 * @throws IOException if an I/O error occured
+	 */
+	public ParallelDeflaterOutputStream(OutputStream out, NBTDictionary dictionary, int level, int strategy, Executor executor) throws IOException {
+		this(out, false, dictionary, level, strategy, executor);
+	}
+	
+	@SuppressWarnings("deprecation")
+	private ParallelDeflaterOutputStream(OutputStream out, boolean gzip, NBTDictionary preset, int level, int strategy,
+			Executor executor) throws IOException {
+		this.out = out;
+		this.gzip = gzip;
+		this.level = level;
+		this.strategy = strategy;
+		this.executor = executor;
+		
+		// validate the settings before anything is written
+		NBTCompressionUtil.releaseDeflater(NBTCompressionUtil.acquireDeflater(level, strategy, true), true);
+		
+		if(gzip) {
+			checksum = new CRC32();
+			out.write(GZIP_HEADER);
+		}
+		else {
+			checksum = new Adler32();
+			
+			int flags;
+			
+			// see zlib's deflate.c
+			if(strategy == Deflater.HUFFMAN_ONLY || (level >= 0 && level < 2))
+				flags = 0;
+			else if(level >= 0 && level < 6)
+				flags = 1;
+			else if(level == 6 || level == Deflater.DEFAULT_COMPRESSION)
+				flags = 2;
+			else flags = 3;
+			
+			int header = (0x78 << 8) | (flags << 6);
+			
+			if(preset != null)
+				header |= 0x20; // FDICT
+			
+			header += 31 - (header % 31);
+			
+			out.write(header >> 8);
+			out.write(header & 0xFF);
+			
+			if(preset != null) {
+				byte[] id = new byte[4];
+				ByteBuffer.wrap(id).putInt(preset.getId());
+				
+				out.write(id);
+				
+				dictionary = preset.getRawData();
+			}
+		}
+	}
+	
+	private void ensureOpen() throws IOException {
+		if(closed)
+			throw new IOException("Stream closed");
+	}
+	
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+	
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		ensureOpen();
+		
+		while(len > 0) {
+			int n = Math.min(len, BLOCK_SIZE - count);
+			
+			System.arraycopy(b, off, block, count, n);
+			
+			count += n;
+			off += n;
+			len -= n;
+			
+			if(count == BLOCK_SIZE)
+				submit(false);
+		}
+	}
+	
+	private void submit(boolean last) throws IOException {
+		final byte[] input = block;
+		final int length = count;
+		final byte[] dict = dictionary;
+		
+		checksum.update(input, 0, length);
+		size += length;
+		
+		if(!last) {
+			dictionary = Arrays.copyOfRange(input, Math.max(0, length - DICTIONARY_SIZE), length);
+			block = new byte[BLOCK_SIZE];
+			count = 0;
+		}
+		
+		pending.add(CompletableFuture.supplyAsync(() -> deflate(input, length, dict, last), executor));
+		
+		// write finished blocks, but keep the amount of buffered blocks bounded
+		while(!pending.isEmpty() && (pending.size() > MAX_PENDING || pending.peek().isDone()))
+			writeNext();
+	}
+	
+	private void writeNext() throws IOException {
+		byte[] compressed;
+		
+		try {
+			compressed = pending.poll().join();
+		} catch (CompletionException e) {
+			if(e.getCause() instanceof RuntimeException cause)
+				throw cause;
+			
+			throw new IOException("Failed to compress block", e.getCause());
+		}
+		
+		out.write(compressed);
+	}
+	
+	private byte[] deflate(byte[] input, int length, byte[] dict, boolean last) {
+		Deflater deflater = NBTCompressionUtil.acquireDeflater(level, strategy, true);
+		
+		try {
+			if(dict != null)
+				deflater.setDictionary(dict);
+			
+			deflater.setInput(input, 0, length);
+			
+			byte[] output = new byte[Math.max(64, length / 2)];
+			int pos = 0;
+			
+			if(last) {
+				deflater.finish();
+				
+				while(!deflater.finished()) {
+					if(pos == output.length)
+						output = Arrays.copyOf(output, output.length * 2);
+					
+					pos += deflater.deflate(output, pos, output.length - pos);
+				}
+			}
+			else while(true) {
+				if(pos == output.length)
+					output = Arrays.copyOf(output, output.length * 2);
+				
+				int space = output.length - pos;
+				int n = deflater.deflate(output, pos, space, Deflater.SYNC_FLUSH);
+				
+				pos += n;
+				
+				/* the flush is complete once all of the input has been consumed and the output
+				 * buffer is not filled up entirely (the first call might only apply the level
+				 * and strategy without consuming any input)
+				 */
+				if(n < space && deflater.needsInput())
+					break;
+			}
+			
+			return Arrays.copyOf(output, pos);
+		} finally {
+			NBTCompressionUtil.releaseDeflater(deflater, true);
+		}
+	}
+	
+	@Override
+	public void flush() throws IOException {
+		ensureOpen();
+		out.flush();
+	}
+	
+	/**
+	 * Finishes writing compressed data to the output stream without closing the underlying stream
+	 * 
+	 * @throws IOException if an I/O error occured
+	 */
+	public void finish() throws IOException {
+		ensureOpen();
+		
+		closed = true;
+		
+		submit(true);
+		
+		while(!pending.isEmpty())
+			writeNext();
+		
+		if(gzip) {
+			byte[] trailer = new byte[8];
+			
+			ByteBuffer.wrap(trailer)
+				.order(ByteOrder.LITTLE_ENDIAN)
+				.putInt((int) checksum.getValue())
+				.putInt((int) size);
+			
+			out.write(trailer);
+		}
+		else {
+			byte[] trailer = new byte[4];
+			
+			ByteBuffer.wrap(trailer)
+				.putInt((int) checksum.getValue());
+			
+			out.write(trailer);
+		}
+	}
+	
+	@Override
+	public void close() throws IOException {
+		try {
+			if(!closed)
+				finish();
+		} finally {
+			out.close();
+		}
+	}
+	
+}
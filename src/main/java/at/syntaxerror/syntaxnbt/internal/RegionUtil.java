@@ -23,19 +23,37 @@
 package at.syntaxerror.syntaxnbt.internal;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.FileOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.IntFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
 
 import at.syntaxerror.syntaxnbt.NBTCompression;
 import at.syntaxerror.syntaxnbt.NBTException;
-import at.syntaxerror.syntaxnbt.NBTUtil;
 import at.syntaxerror.syntaxnbt.region.Chunk;
 import at.syntaxerror.syntaxnbt.region.Region;
+import at.syntaxerror.syntaxnbt.region.RegionSummary;
+import at.syntaxerror.syntaxnbt.tag.TagCompound;
 import lombok.experimental.UtilityClass;
 
 /**
@@ -48,6 +66,288 @@ import lombok.experimental.UtilityClass;
 @SuppressWarnings("deprecation")
 public class RegionUtil {
 
+	/** The size of a single sector within a region file */
+	public static final int SECTOR_SIZE = 4096;
+	
+	/** The size of the header (location and timestamp table) of a region file */
+	public static final int HEADER_SIZE = 2 * SECTOR_SIZE;
+
+	/** The flag within the compression scheme marking chunks stored in an external {@code .mcc} file */
+	public static final int EXTERNAL_FLAG = 0x80;
+	
+	// maximum number of sectors read at once when reading adjacent chunks (1MiB)
+	private static final int MAX_RUN_SECTORS = 256;
+	
+	private static final Pattern REGION_NAME = Pattern.compile("r\\.(-?\\d+)\\.(-?\\d+)\\.mc[ar]");
+	private static final Pattern EXTERNAL_NAME = Pattern.compile("c\\.(-?\\d+)\\.(-?\\d+)\\.mcc");
+
+	/**
+	 * Returns the index of a chunk within the location and timestamp table
+	 * 
+	 * @param x chunk's X position ({@code 0 >= x < 32})
+	 * @param z chunk's Z position ({@code 0 >= z < 32})
+	 * @return the index of the chunk
+	 */
+	public static int index(int x, int z) {
+		if(x < 0 || x > 31 || z < 0 || z > 31)
+			throw new NBTException("Chunk coordinate out of bounds");
+		
+		return x + z * 32;
+	}
+	
+	/**
+	 * Returns the number of sectors required for a chunk
+	 * 
+	 * @param size the size of the serialized chunk (excluding the length prefix)
+	 * @return the number of sectors
+	 */
+	public static int sectors(int size) {
+		return (size + 4 + SECTOR_SIZE - 1) / SECTOR_SIZE;
+	}
+	
+	/**
+	 * Returns the path of a region file ({@code r.<x>.<z>.mca}) within a directory
+	 * 
+	 * @param directory the directory (usually a world's {@code region} folder)
+	 * @param regionX the region's X position
+	 * @param regionZ the region's Z position
+	 * @return the path of the region file
+	 */
+	public static Path regionFile(Path directory, int regionX, int regionZ) {
+		return directory.resolve("r." + regionX + "." + regionZ + ".mca");
+	}
+	
+	/**
+	 * Returns the path of the external file ({@code c.<x>.<z>.mcc}) for a chunk which is too big
+	 * to be stored within the region file itself. The absolute chunk coordinates are derived
+	 * from the name of the region file ({@code r.<x>.<z>.mca})
+	 * 
+	 * @param region the path of the region file
+	 * @param x chunk's X position ({@code 0 >= x < 32})
+	 * @param z chunk's Z position ({@code 0 >= z < 32})
+	 * @return the path of the external file, or {@code null} if the region file's name does not contain its position
+	 */
+	public static Path externalFile(Path region, int x, int z) {
+		int[] position = regionPosition(region);
+		
+		if(position == null)
+			return null;
+		
+		int chunkX = position[0] * 32 + x;
+		int chunkZ = position[1] * 32 + z;
+		
+		return region.resolveSibling("c." + chunkX + "." + chunkZ + ".mcc");
+	}
+	
+	/**
+	 * Returns the position of a region, as encoded in the name of its region file ({@code r.<x>.<z>.mca})
+	 * 
+	 * @param region the path of the region file
+	 * @return the region's X and Z position, or {@code null} if the file name does not contain its position
+	 */
+	public static int[] regionPosition(Path region) {
+		Path name = region.getFileName();
+		
+		if(name == null)
+			return null;
+		
+		Matcher matcher = REGION_NAME.matcher(name.toString());
+		
+		if(!matcher.matches())
+			return null;
+		
+		try {
+			return new int[] {
+				Integer.parseInt(matcher.group(1)),
+				Integer.parseInt(matcher.group(2))
+			};
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * Checks whether the serialized chunk is stored in an external file
+	 * 
+	 * @param compression the compression scheme as stored in the region file
+	 * @return whether the chunk is stored externally
+	 */
+	public static boolean isExternal(byte compression) {
+		return (compression & EXTERNAL_FLAG) != 0;
+	}
+	
+	private static Path requireExternalFile(Path region, int x, int z) {
+		Path file = region == null ? null : externalFile(region, x, z);
+		
+		if(file == null)
+			throw new NBTException("Cannot determine the external file of chunk " + x + ", " + z + " (region file must be named r.<x>.<z>.mca)");
+		
+		return file;
+	}
+	
+	/**
+	 * Reads a chunk stored in an external file
+	 * 
+	 * @param region the path of the region file
+	 * @param x chunk's X position ({@code 0 >= x < 32})
+	 * @param z chunk's Z position ({@code 0 >= z < 32})
+	 * @param compression the compression scheme as stored in the region file
+	 * @return the serialized chunk (compression scheme followed by the compressed data)
+	 * @throws IOException if an I/O error occured
+	 */
+	public static byte[] readExternal(Path region, int x, int z, byte compression) throws IOException {
+		try(FileChannel channel = FileChannel.open(requireExternalFile(region, x, z), StandardOpenOption.READ)) {
+			long size = channel.size();
+			
+			if(size > Integer.MAX_VALUE - 1)
+				throw new NBTException("External chunk is too big");
+			
+			ByteBuffer data = ByteBuffer.allocate((int) size + 1);
+			data.put((byte) (compression & ~EXTERNAL_FLAG));
+			
+			while(data.hasRemaining())
+				if(channel.read(data) < 0)
+					throw new EOFException("Unexpected end of external chunk file");
+			
+			return data.array();
+		}
+	}
+	
+	/**
+	 * Writes a chunk into an external file
+	 * 
+	 * @param region the path of the region file
+	 * @param x chunk's X position ({@code 0 >= x < 32})
+	 * @param z chunk's Z position ({@code 0 >= z < 32})
+	 * @param data the serialized chunk (compression scheme followed by the compressed data)
+	 * @return the data to be stored within the region file instead
+	 * @throws IOException if an I/O error occured
+	 */
+	public static byte[] writeExternal(Path region, int x, int z, byte[] data) throws IOException {
+		Path file = requireExternalFile(region, x, z);
+		Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+		
+		try {
+			try(FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+				ByteBuffer payload = ByteBuffer.wrap(data, 1, data.length - 1);
+				
+				while(payload.hasRemaining())
+					channel.write(payload);
+			}
+			
+			replace(temp, file);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+		
+		return new byte[] { (byte) (data[0] | EXTERNAL_FLAG) };
+	}
+	
+	/**
+	 * Deletes the external file of a chunk, if present
+	 * 
+	 * @param region the path of the region file
+	 * @param x chunk's X position ({@code 0 >= x < 32})
+	 * @param z chunk's Z position ({@code 0 >= z < 32})
+	 * @throws IOException if an I/O error occured
+	 */
+	public static void deleteExternal(Path region, int x, int z) throws IOException {
+		Path file = region == null ? null : externalFile(region, x, z);
+		
+		if(file != null)
+			Files.deleteIfExists(file);
+	}
+	
+	/**
+	 * Lists the chunks of a region which currently have an external file.
+	 * The directory is only scanned once, instead of probing each of the 1024 chunks
+	 * 
+	 * @param region the path of the region file, or {@code null}
+	 * @return the indices ({@code x + z * 32}) of the chunks with an external file
+	 * @throws IOException if an I/O error occured
+	 */
+	public static BitSet listExternal(Path region) throws IOException {
+		BitSet chunks = new BitSet(1024);
+		int[] position = region == null ? null : regionPosition(region);
+		
+		if(position == null)
+			return chunks;
+		
+		Path directory = region.toAbsolutePath().getParent();
+		
+		if(directory == null || !Files.isDirectory(directory))
+			return chunks;
+		
+		try(DirectoryStream<Path> files = Files.newDirectoryStream(directory, "c.*.mcc")) {
+			for(Path file : files) {
+				Matcher matcher = EXTERNAL_NAME.matcher(file.getFileName().toString());
+				
+				if(!matcher.matches())
+					continue;
+				
+				try {
+					int x = Integer.parseInt(matcher.group(1)) - position[0] * 32;
+					int z = Integer.parseInt(matcher.group(2)) - position[1] * 32;
+					
+					if(x >= 0 && x < 32 && z >= 0 && z < 32)
+						chunks.set(x + z * 32);
+				} catch (NumberFormatException e) {
+					// not a chunk of this region
+				}
+			}
+		}
+		
+		return chunks;
+	}
+	
+	/**
+	 * Changes the position stored within a serialized chunk ({@code xPos} and {@code zPos},
+	 * or {@code Level.xPos} and {@code Level.zPos} before Minecraft 1.18). The chunk is decompressed,
+	 * patched in place (see {@link NBTPatcher}), and compressed again using the same compression scheme,
+	 * without being deserialized. Chunks without a position (e.g. entity chunks) are returned unchanged
+	 * 
+	 * @param data the serialized chunk (compression scheme followed by the compressed data)
+	 * @param chunkX the chunk's new absolute X position
+	 * @param chunkZ the chunk's new absolute Z position
+	 * @return the serialized relocated chunk
+	 */
+	public static byte[] relocateChunk(byte[] data, int chunkX, int chunkZ) {
+		NBTCompression compression = NBTCompression.getCompressionFromId(data[0]);
+		
+		ByteBuffer nbt = ByteBuffer.wrap(compression.decompress(ByteBuffer.wrap(data, 1, data.length - 1)));
+		
+		// before Minecraft 1.18, the chunk data was wrapped in a "Level" compound
+		String prefix = NBTPatcher.patch(nbt, "xPos", chunkX) ? "" : "Level.";
+		
+		if(!prefix.isEmpty() && !NBTPatcher.patch(nbt, "Level.xPos", chunkX))
+			return data;
+		
+		NBTPatcher.patch(nbt, prefix + "zPos", chunkZ);
+		
+		byte[] compressed = compression.compress(nbt, Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY);
+		
+		byte[] relocated = new byte[compressed.length + 1];
+		relocated[0] = data[0];
+		System.arraycopy(compressed, 0, relocated, 1, compressed.length);
+		
+		return relocated;
+	}
+	
+	/**
+	 * Replaces a file, atomically if supported by the file system
+	 * 
+	 * @param source the new file
+	 * @param target the file to be replaced
+	 * @throws IOException if an I/O error occured
+	 */
+	public static void replace(Path source, Path target) throws IOException {
+		try {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+	
 	/**
 	 * Writes a region to a stream
 	 * 
@@ -56,49 +356,352 @@ public class RegionUtil {
 	 * @throws IOException if an I/O error occured
 	 */
 	public static void serialize(Region region, RandomAccessFile output) throws IOException {
-		try(ByteArrayOutputStream locationBytes = new ByteArrayOutputStream();
-			ByteArrayOutputStream timestampBytes = new ByteArrayOutputStream();
-			DataOutputStream locationStream = new DataOutputStream(locationBytes);
-			DataOutputStream timestampStream = new DataOutputStream(timestampBytes)) {
+		serialize(region, output, (Path) null);
+	}
+	
+	/**
+	 * Writes a region to a stream. Chunks which are too big for the region file
+	 * are written into external files next to the region file
+	 * 
+	 * @param region region to be serialized
+	 * @param output stream to write to
+	 * @param path the path of the region file, or {@code null} if chunks cannot be stored externally
+	 * @throws IOException if an I/O error occured
+	 */
+	public static void serialize(Region region, RandomAccessFile output, Path path) throws IOException {
+		CompressionSelector selector = region.getCompressionPolicy() == null
+			? null
+			: sampleCompression(region);
+		
+		write(region, output, path, index -> {
+			Chunk chunk = region.getChunk(index & 31, index >> 5);
 			
-			int offset = 2; // 2*4KiB headers ==> initial offset = 2
+			return chunk == null ? null : serializeChunk(region, chunk, selector);
+		});
+	}
+	
+	/**
+	 * Writes a region to a stream, encoding and compressing the chunks on multiple threads.
+	 * The chunks are written by the calling thread, in the same order as they are laid out in the file
+	 * 
+	 * @param region region to be serialized
+	 * @param output stream to write to
+	 * @param executor the executor to serialize the chunks on
+	 * @throws IOException if an I/O error occured
+	 */
+	public static void serialize(Region region, RandomAccessFile output, Executor executor) throws IOException {
+		serialize(region, output, null, executor);
+	}
+	
+	/**
+	 * Writes a region to a stream, encoding and compressing the chunks on multiple threads.
+	 * The chunks are written by the calling thread, in the same order as they are laid out in the file.
+	 * Chunks which are too big for the region file are written into external files next to the region file
+	 * 
+	 * @param region region to be serialized
+	 * @param output stream to write to
+	 * @param path the path of the region file, or {@code null} if chunks cannot be stored externally
+	 * @param executor the executor to serialize the chunks on
+	 * @throws IOException if an I/O error occured
+	 */
+	public static void serialize(Region region, RandomAccessFile output, Path path, Executor executor) throws IOException {
+		CompressionSelector selector = region.getCompressionPolicy() == null
+			? null
+			: sampleCompression(region);
+		
+		List<CompletableFuture<byte[]>> tasks = new ArrayList<>(1024);
+		
+		for(int index = 0; index < 1024; ++index) {
+			Chunk chunk = region.getChunk(index & 31, index >> 5);
 			
-			for(int x = 0; x < 32; ++x)
-				for(int z = 0; z < 32; ++z) {
-					Chunk chunk = region.getChunk(x, z);
-					
-					if(chunk == null) {
-						locationStream.writeInt(0);
-						timestampStream.writeInt(0);
-						continue;
-					}
-					
-					byte[] buf = chunk.serialize(region.getCompression());
-					
-					int size = buf.length / 4096 + ((buf.length % 4096) == 0 ? 0 : 1);
-					
-					if(size != (size & 0xFF))
-						throw new NBTException("Chunk is too big (>1MiB)");
-					
-					locationStream.writeInt((offset << 8) | size);
-					timestampStream.writeInt(region.getTimestamp(x, z));
-					
-					output.seek(offset * 4096);
-					output.write(buf);
-					
-					offset += size;
-				}
+			tasks.add(
+				chunk == null
+					? null
+					: CompletableFuture.supplyAsync(() -> serializeChunk(region, chunk, selector), executor)
+			);
+		}
+		
+		try {
+			write(region, output, path, index -> tasks.get(index) == null ? null : tasks.get(index).join());
+		} catch (CompletionException e) {
+			if(e.getCause() instanceof RuntimeException cause)
+				throw cause;
 			
-			output.seek(0);
-			output.write(locationBytes.toByteArray());
+			throw new NBTException("Failed to serialize Region", e.getCause());
+		} finally {
+			// don't leave any tasks running in case of an error
+			for(CompletableFuture<byte[]> task : tasks)
+				if(task != null)
+					task.cancel(false);
+		}
+	}
+	
+	/**
+	 * Serializes a chunk using the compression settings of the region
+	 * 
+	 * @param region the region containing the chunk
+	 * @param chunk the chunk
+	 * @param selector the selector for adaptive compression, or {@code null}
+	 * @return the serialized data
+	 */
+	public static byte[] serializeChunk(Region region, Chunk chunk, CompressionSelector selector) {
+		return selector == null
+			? chunk.serialize(region.getCompression(), region.getCompressionLevel(), region.getCompressionStrategy())
+			: serializeAdaptive(region, chunk, selector);
+	}
+	
+	private static void write(Region region, RandomAccessFile output, Path path, IntFunction<byte[]> chunks) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		
+		// external files which are no longer referenced are only deleted once the new header
+		// has been written, so that a failed save never leaves the old header without its data
+		BitSet stale = listExternal(path);
+		
+		int offset = 2; // 2*4KiB headers ==> initial offset = 2
+		
+		output.seek(HEADER_SIZE);
+		
+		for(int index = 0; index < 1024; ++index) {
+			byte[] buf = chunks.apply(index);
+			
+			if(buf == null)
+				continue;
+			
+			int size = sectors(buf.length);
+			
+			if(size != (size & 0xFF)) {
+				if(path == null)
+					throw new NBTException("Chunk is too big (>1MiB)");
+				
+				buf = writeExternal(path, index & 31, index >> 5, buf);
+				size = sectors(buf.length);
+				
+				stale.clear(index);
+			}
+			
+			header.putInt(index * 4, (offset << 8) | size);
+			header.putInt(SECTOR_SIZE + index * 4, region.getTimestamp(index & 31, index >> 5));
+			
+			// length prefix, data, and padding are written at once
+			byte[] record = new byte[size * SECTOR_SIZE];
 			
-			if(output.getFilePointer() != 4096)
-				throw new NBTException("Location header size mismatch");
+			ByteBuffer.wrap(record).putInt(buf.length).put(buf);
 			
-			output.write(timestampBytes.toByteArray());
+			output.write(record);
+			
+			offset += size;
+		}
+		
+		output.seek(0);
+		output.write(header.array());
+		
+		// discard any previous content
+		output.setLength(offset * (long) SECTOR_SIZE);
+		
+		for(int index = stale.nextSetBit(0); index >= 0; index = stale.nextSetBit(index + 1))
+			deleteExternal(path, index & 31, index >> 5);
+	}
+
+	/**
+	 * Measures the compression schemes on a sample of the modified chunks in the region
+	 * 
+	 * @param region the region
+	 * @return the selector
+	 */
+	public static CompressionSelector sampleCompression(Region region) {
+		List<Chunk> dirty = new ArrayList<>();
+		
+		for(int x = 0; x < 32; ++x)
+			for(int z = 0; z < 32; ++z) {
+				Chunk chunk = region.getChunk(x, z);
+				
+				if(chunk != null && chunk.isDirty())
+					dirty.add(chunk);
+			}
+		
+		List<byte[]> samples = new ArrayList<>();
+		
+		int count = Math.min(dirty.size(), CompressionSelector.SAMPLE_SIZE);
+		
+		// spread the samples evenly across the region
+		for(int i = 0; i < count; ++i)
+			samples.add(dirty.get(i * dirty.size() / count).encode());
+		
+		return CompressionSelector.measure(
+			region.getCompressionPolicy(),
+			region.getCompression(),
+			region.getCompressionStrategy(),
+			samples
+		);
+	}
+	
+	/**
+	 * Serializes a chunk using the compression scheme chosen by the selector
+	 * 
+	 * @param region the region containing the chunk
+	 * @param chunk the chunk
+	 * @param selector the selector
+	 * @return the serialized data
+	 */
+	public static byte[] serializeAdaptive(Region region, Chunk chunk, CompressionSelector selector) {
+		if(!chunk.isDirty())
+			return chunk.serialize(region.getCompression(), region.getCompressionLevel(), region.getCompressionStrategy());
+		
+		byte[] encoded = chunk.encode();
+		
+		CompressionSelector.Candidate candidate = selector.select(encoded.length);
+		
+		chunk.setCompression(candidate.getCompression());
+		
+		return chunk.compress(encoded, candidate.getCompression(), candidate.getLevel(), region.getCompressionStrategy());
+	}
 
-			if(output.getFilePointer() != 8192)
-				throw new NBTException("Timestamp header size mismatch");
+	/**
+	 * Reads the location and timestamp table of a region file
+	 * 
+	 * @param header the header ({@link #HEADER_SIZE} bytes)
+	 * @param locations the array to store the locations in
+	 * @param timestamps the array to store the timestamps in
+	 */
+	public static void readHeader(ByteBuffer header, int[] locations, int[] timestamps) {
+		for(int i = 0; i < 1024; ++i) {
+			locations[i] = header.getInt(header.position() + i * 4);
+			timestamps[i] = header.getInt(header.position() + SECTOR_SIZE + i * 4);
+		}
+	}
+	
+	/**
+	 * Reads the summary of a region file, only reading its location and timestamp table
+	 * 
+	 * @param path the path of the region file
+	 * @return the summary
+	 * @throws IOException if an I/O error occured
+	 */
+	public static RegionSummary summarize(Path path) throws IOException {
+		int[] locations = new int[1024];
+		int[] timestamps = new int[1024];
+		
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			// empty region files are created by Minecraft occasionally
+			if(channel.size() >= HEADER_SIZE) {
+				ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+				
+				while(header.hasRemaining())
+					if(channel.read(header, header.position()) < 0)
+						throw new EOFException("Unexpected end of region file");
+				
+				readHeader(header.flip(), locations, timestamps);
+			}
+		}
+		
+		return new RegionSummary(path, locations, timestamps);
+	}
+	
+	/**
+	 * Returns the offset (in sectors) of a chunk within the region file
+	 * 
+	 * @param location the location table entry
+	 * @return the offset
+	 */
+	public static int offset(int location) {
+		return (location >> 8) & 0xFFFFFF;
+	}
+	
+	/**
+	 * Returns the number of sectors allocated for a chunk within the region file
+	 * 
+	 * @param location the location table entry
+	 * @return the number of sectors
+	 */
+	public static int sectorCount(int location) {
+		return location & 0xFF;
+	}
+	
+	/**
+	 * Returns the indices of all chunks present in the location table, sorted
+	 * by their offset within the region file (i.e. in the order they are stored in)
+	 * 
+	 * @param locations the location table
+	 * @return the sorted indices
+	 */
+	public static int[] offsetOrder(int[] locations) {
+		long[] keys = new long[locations.length];
+		int count = 0;
+		
+		for(int index = 0; index < locations.length; ++index)
+			if(locations[index] != 0)
+				keys[count++] = (long) offset(locations[index]) << 32 | index;
+		
+		Arrays.sort(keys, 0, count);
+		
+		int[] order = new int[count];
+		
+		for(int i = 0; i < count; ++i)
+			order[i] = (int) keys[i];
+		
+		return order;
+	}
+	
+	/**
+	 * Validates the length prefix of a chunk
+	 * 
+	 * @param location the location table entry
+	 * @param length the length prefix
+	 * @return the length
+	 */
+	public static int checkLength(int location, int length) {
+		if(length < 1 || length > sectorCount(location) * SECTOR_SIZE - 4)
+			throw new NBTException("Invalid chunk length");
+		
+		return length;
+	}
+	
+	/**
+	 * Decompresses and deserializes a chunk. The serialized data is kept by the chunk,
+	 * so it can be written back as-is as long as the chunk is not modified
+	 * 
+	 * @param data the serialized chunk (compression scheme followed by the compressed data, excluding the length prefix)
+	 * @return the deserialized chunk
+	 * @throws IOException if an I/O error occured
+	 */
+	public static Chunk decodeChunk(ByteBuffer data) throws IOException {
+		byte[] serialized;
+		
+		// avoid copying if the buffer wraps exactly the serialized data
+		if(data.hasArray() && data.arrayOffset() == 0 && data.position() == 0 && data.remaining() == data.array().length)
+			serialized = data.array();
+		
+		else {
+			serialized = new byte[data.remaining()];
+			data.duplicate().get(serialized);
+		}
+		
+		return new Chunk(serialized, decodeData(ByteBuffer.wrap(serialized)));
+	}
+	
+	/**
+	 * Decompresses and deserializes the data of a chunk
+	 * 
+	 * @param data the serialized chunk (compression scheme followed by the compressed data, excluding the length prefix)
+	 * @return the chunk data
+	 * @throws IOException if an I/O error occured
+	 */
+	public static TagCompound decodeData(ByteBuffer data) throws IOException {
+		if(isExternal(data.get(data.position())))
+			throw new NBTException("Chunk is stored in an external file");
+		
+		NBTCompression compression = NBTCompression.getCompressionFromId(data.get(data.position()));
+		
+		ByteBuffer payload = data.duplicate().position(data.position() + 1);
+		
+		// uncompressed data can be read straight from the buffer
+		InputStream stream = compression == NBTCompression.NONE
+			? new ByteBufferInputStream(payload)
+			: new ByteArrayInputStream(compression.decompress(payload));
+		
+		try(DataInputStream in = new DataInputStream(stream)) {
+			return NBTDeserializer.deserialize(new TagCompound(), in)
+				.getCompound("");
 		}
 	}
 
@@ -110,53 +713,151 @@ public class RegionUtil {
 	 * @throws IOException if an I/O error occured
 	 */
 	public static Region deserialize(RandomAccessFile input) throws IOException {
-		Region region = new Region();
+		return deserialize(input, false);
+	}
+
+	/**
+	 * Decodes all chunks within the region which have not been decoded yet,
+	 * distributing the work across the executor. Blocks until all chunks are decoded
+	 * 
+	 * @param region the region
+	 * @param executor the executor to decode the chunks on
+	 */
+	public static void decodeAll(Region region, Executor executor) {
+		List<CompletableFuture<?>> tasks = new ArrayList<>();
 		
-		byte[] locationBytes = new byte[4096];
-		byte[] timestampBytes = new byte[4096];
+		for(int z = 0; z < 32; ++z)
+			for(int x = 0; x < 32; ++x) {
+				Chunk chunk = region.getChunk(x, z);
+				
+				if(chunk != null && !chunk.isLoaded())
+					tasks.add(CompletableFuture.runAsync(chunk::getData, executor));
+			}
 		
-		input.read(locationBytes);
-		input.read(timestampBytes);
+		try {
+			CompletableFuture.allOf(tasks.toArray(CompletableFuture[]::new)).join();
+		} catch (CompletionException e) {
+			if(e.getCause() instanceof RuntimeException cause)
+				throw cause;
+			
+			throw new NBTException("Failed to decode Region", e.getCause());
+		}
+	}
+	
+	/**
+	 * Reads a region from a stream (NBT format), decoding the chunks on multiple threads
+	 * 
+	 * @param input stream to read to
+	 * @param executor the executor to decode the chunks on
+	 * @return the deserialized region
+	 * @throws IOException if an I/O error occured
+	 */
+	public static Region deserialize(RandomAccessFile input, Executor executor) throws IOException {
+		Region region = deserialize(input, true);
 		
-		try(DataInputStream locationStream = new DataInputStream(new ByteArrayInputStream(locationBytes));
-			DataInputStream timestampStream = new DataInputStream(new ByteArrayInputStream(timestampBytes))) {
+		decodeAll(region, executor);
+		
+		return region;
+	}
 
-			for(int x = 0; x < 32; ++x)
-				for(int z = 0; z < 32; ++z) {
-					int location = locationStream.readInt();
-					int timestamp = timestampStream.readInt();
-					
-					region.setTimestamp(x, z, timestamp);
-					
-					if(location == 0) // chunk has not been generated yet
-						continue;
-					
-					input.seek(((location >> 8) & 0xFFFFFF) * 4096L);
-					
-					byte[] buf = new byte[input.readInt()];
-					
-					input.read(buf);
-					
-					try(InputStream in = NBTCompression.ZLIB.newInputStream(new ByteArrayInputStream(buf, 1, buf.length-1));
-						FileOutputStream fos = new FileOutputStream("/run/media/thomas/Shared/Git/syntaxnbt/src/test/test.mcr")) {
-						
-						in.transferTo(fos);
-					}
-					
-					try(ByteArrayInputStream buffer = new ByteArrayInputStream(buf)) {
-						
-						NBTCompression compression = NBTCompression.getCompressionFromId((byte) buffer.read());
-						
-						Chunk chunk = new Chunk(
-							NBTUtil.deserialize(buffer, compression)
-								.getCompound("")
-						);
-						
-						chunk.setCompression(compression);
-						
-						region.setChunk(x, z, chunk);
-					}
-				}
+	/**
+	 * Reads a region from a stream (NBT format)
+	 * 
+	 * @param input stream to read to
+	 * @param lazy whether chunks should only be decoded upon first access
+	 * @return the deserialized region
+	 * @throws IOException if an I/O error occured
+	 */
+	public static Region deserialize(RandomAccessFile input, boolean lazy) throws IOException {
+		return deserialize(input, lazy, null);
+	}
+
+	/**
+	 * Reads a region from a stream (NBT format). Chunks stored in external files
+	 * are read from the files next to the region file.
+	 * <p>
+	 * The chunks are read in the order they are stored in rather than by their position, so the file is
+	 * read sequentially. Runs of adjacent chunks (up to 1MiB) are read at once
+	 * 
+	 * @param input stream to read to
+	 * @param lazy whether chunks should only be decoded upon first access
+	 * @param path the path of the region file, or {@code null} if chunks cannot be stored externally
+	 * @return the deserialized region
+	 * @throws IOException if an I/O error occured
+	 */
+	public static Region deserialize(RandomAccessFile input, boolean lazy, Path path) throws IOException {
+		Region region = new Region();
+		
+		// empty region files are created by Minecraft occasionally
+		if(input.length() < HEADER_SIZE)
+			return region;
+		
+		byte[] header = new byte[HEADER_SIZE];
+		
+		input.readFully(header);
+		
+		int[] locations = new int[1024];
+		int[] timestamps = new int[1024];
+		
+		readHeader(ByteBuffer.wrap(header), locations, timestamps);
+		
+		for(int index = 0; index < 1024; ++index)
+			region.setTimestamp(index & 31, index >> 5, timestamps[index]);
+		
+		// chunks are read in the order they are stored in, so the file is read front to back
+		int[] order = offsetOrder(locations);
+		
+		long fileSize = input.length();
+		
+		for(int i = 0; i < order.length;) {
+			int start = offset(locations[order[i]]);
+			int end = start + sectorCount(locations[order[i]]);
+			int last = i + 1;
+			
+			// adjacent chunks are read at once
+			while(last < order.length) {
+				int location = locations[order[last]];
+				
+				if(offset(location) != end || end + sectorCount(location) - start > MAX_RUN_SECTORS)
+					break;
+				
+				end += sectorCount(location);
+				++last;
+			}
+			
+			long position = start * (long) SECTOR_SIZE;
+			
+			// the last chunk is not necessarily padded to a whole sector
+			byte[] run = new byte[(int) Math.max(0, Math.min(end * (long) SECTOR_SIZE, fileSize) - position)];
+			
+			input.seek(position);
+			input.readFully(run);
+			
+			ByteBuffer buffer = ByteBuffer.wrap(run);
+			
+			for(; i < last; ++i) {
+				int index = order[i];
+				int location = locations[index];
+				int x = index & 31;
+				int z = index >> 5;
+				
+				int relative = (offset(location) - start) * SECTOR_SIZE;
+				
+				if(relative + 4 > run.length)
+					throw new EOFException("Unexpected end of region file");
+				
+				int length = checkLength(location, buffer.getInt(relative));
+				
+				if(relative + 4 + length > run.length)
+					throw new EOFException("Unexpected end of region file");
+				
+				byte[] buf = Arrays.copyOfRange(run, relative + 4, relative + 4 + length);
+				
+				if(isExternal(buf[0]))
+					buf = readExternal(path, x, z, buf[0]);
+				
+				region.setChunk(x, z, lazy ? new Chunk(buf) : decodeChunk(ByteBuffer.wrap(buf)));
+			}
 		}
 		
 		return region;
@@ -0,0 +1,203 @@
+/* MIT License
+ * 
+ * Copyright (c) 2022 SyntaxError404
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package at.syntaxerror.syntaxnbt.region;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import at.syntaxerror.syntaxnbt.tag.Tag;
+import at.syntaxerror.syntaxnbt.tag.TagCompound;
+import at.syntaxerror.syntaxnbt.tag.TagString;
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * An immutable block state, consisting of a block name (e.g. {@code minecraft:oak_log})
+ * and its properties (e.g. {@code axis=y}).
+ * <p>
+ * Block states are interned, so equal block states are always the same instance
+ * and can be compared via {@code ==}.
+ * 
+ * @author SyntaxError404
+ * 
+ */
+@Getter
+public final class BlockState {
+	
+	private static final String NAMESPACE = "minecraft:";
+	
+	private static final Map<BlockState, BlockState> INTERNED = new ConcurrentHashMap<>();
+	
+	/**
+	 * Returns a block state without any properties.
+	 * Names without a namespace are assumed to be in the {@code minecraft} namespace
+	 * 
+	 * @param name the block name
+	 * @return the block state
+	 */
+	public static BlockState of(@NonNull String name) {
+		return of(name, Map.of());
+	}
+	
+	/**
+	 * Returns a block state.
+	 * Names without a namespace are assumed to be in the {@code minecraft} namespace
+	 * 
+	 * @param name the block name
+	 * @param properties the properties
+	 * @return the block state
+	 */
+	public static BlockState of(@NonNull String name, @NonNull Map<String, String> properties) {
+		BlockState state = new BlockState(
+			normalize(name),
+			properties.isEmpty()
+				? Map.of()
+				: Collections.unmodifiableMap(new TreeMap<>(properties))
+		);
+		
+		BlockState interned = INTERNED.putIfAbsent(state, state);
+		
+		return interned == null ? state : interned;
+	}
+	
+	/**
+	 * Returns the block state described by a palette entry, consisting of
+	 * a {@code Name} and an optional {@code Properties} compound
+	 * 
+	 * @param tag the palette entry
+	 * @return the block state
+	 */
+	public static BlockState fromTag(@NonNull TagCompound tag) {
+		String name = tag.getString("Name");
+		
+		if(!(tag.get("Properties", null) instanceof TagCompound props) || props.isEmpty())
+			return of(name);
+		
+		Map<String, String> properties = new TreeMap<>();
+		
+		for(Map.Entry<String, Tag<?>> entry : props.getValue().entrySet())
+			properties.put(
+				entry.getKey(),
+				entry.getValue() instanceof TagString string
+					? string.getValue()
+					: String.valueOf(entry.getValue().getValue())
+			);
+		
+		return of(name, properties);
+	}
+	
+	private static String normalize(String name) {
+		return name.indexOf(':') == -1 ? NAMESPACE + name : name;
+	}
+	
+	/**
+	 * Returns the block name, including its namespace
+	 * 
+	 * @return the block name
+	 */
+	private final String name;
+	
+	/**
+	 * Returns the (unmodifiable) properties of this block state
+	 * 
+	 * @return the properties
+	 */
+	private final Map<String, String> properties;
+	
+	private BlockState(String name, Map<String, String> properties) {
+		this.name = name;
+		this.properties = properties;
+	}
+	
+	/**
+	 * Returns the value of a property
+	 * 
+	 * @param key the property's name
+	 * @return the value, or {@code null} if this block state does not have the property
+	 */
+	public String getProperty(String key) {
+		return properties.get(key);
+	}
+	
+	/**
+	 * Checks whether this block state belongs to the given block, regardless of its properties.
+	 * Names without a namespace are assumed to be in the {@code minecraft} namespace
+	 * 
+	 * @param name the block name
+	 * @return whether this block state belongs to the block
+	 */
+	public boolean is(@NonNull String name) {
+		return this.name.equals(normalize(name));
+	}
+	
+	/**
+	 * Converts this block state into a palette entry
+	 * 
+	 * @return the palette entry
+	 */
+	public TagCompound toTag() {
+		TagCompound tag = new TagCompound().putString("Name", name);
+		
+		if(!properties.isEmpty()) {
+			TagCompound props = new TagCompound();
+			
+			properties.forEach(props::putString);
+			
+			tag.putCompound("Properties", props);
+		}
+		
+		return tag;
+	}
+	
+	@Override
+	public boolean equals(Object obj) {
+		return this == obj || (obj instanceof BlockState state
+			&& name.equals(state.name)
+			&& properties.equals(state.properties));
+	}
+	
+	@Override
+	public int hashCode() {
+		return name.hashCode() * 31 + properties.hashCode();
+	}
+	
+	@Override
+	public String toString() {
+		if(properties.isEmpty())
+			return name;
+		
+		StringBuilder sb = new StringBuilder(name).append('[');
+		
+		properties.forEach((key, value) -> {
+			if(sb.charAt(sb.length() - 1) != '[')
+				sb.append(',');
+			
+			sb.append(key).append('=').append(value);
+		});
+		
+		return sb.append(']').toString();
+	}
+	
+}
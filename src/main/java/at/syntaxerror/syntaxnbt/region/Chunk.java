@@ -23,15 +23,30 @@
 package at.syntaxerror.syntaxnbt.region;
 
 import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.zip.Deflater;
 
 import at.syntaxerror.syntaxnbt.NBTCompression;
 import at.syntaxerror.syntaxnbt.NBTException;
 import at.syntaxerror.syntaxnbt.NBTUtil;
+import at.syntaxerror.syntaxnbt.internal.NBTPatcher;
+import at.syntaxerror.syntaxnbt.internal.NBTSerializer;
+import at.syntaxerror.syntaxnbt.internal.RegionUtil;
+import at.syntaxerror.syntaxnbt.tag.Tag;
 import at.syntaxerror.syntaxnbt.tag.TagCompound;
+import at.syntaxerror.syntaxnbt.tag.TagInt;
+import at.syntaxerror.syntaxnbt.tag.TagList;
 import lombok.AccessLevel;
 import lombok.Getter;
+import lombok.NonNull;
 
 /**
  * A structure holding information about one Minecraft chunk (16x384x16 blocks)
@@ -42,26 +57,36 @@ import lombok.Getter;
 @Getter
 public class Chunk {
 
-	/**
-	 * Returns the chunk data. After making changes to
-	 * this tag (or any of its sub-tags), {@link #setDirty(boolean) setDirty(true)}
-	 * has to be called in order to apply those changes.
-	 * 
-	 * @return the chunk data
-	 */
+	@Getter(AccessLevel.NONE)
 	private TagCompound data;
 
 	@Getter(AccessLevel.NONE)
 	private byte[] serialized;
 
-	/**
-	 * Checks whether this chunk is marked as dirty (has been
-	 * changed since last serialization)
-	 * 
-	 * @return whether this chunk is marked as dirty
-	 */
+	@Getter(AccessLevel.NONE)
 	private boolean dirty;
 	
+	// modifications made to the chunk data after this checkpoint are not reflected by the serialized data
+	@Getter(AccessLevel.NONE)
+	private long checkpoint;
+	
+	@Getter(AccessLevel.NONE)
+	private long encodedAt;
+	
+	// whether the serialized data has been patched, but not saved yet
+	@Getter(AccessLevel.NONE)
+	private boolean patched;
+	
+	// views of the sections with blocks, valid until the chunk data is modified after sectionsAt or replaced
+	@Getter(AccessLevel.NONE)
+	private List<ChunkSection> sections;
+	
+	@Getter(AccessLevel.NONE)
+	private Map<Integer, ChunkSection> sectionsByY;
+	
+	@Getter(AccessLevel.NONE)
+	private long sectionsAt;
+	
 	/**
 	 * Returns the compression scheme used for this chunk
 	 * 
@@ -87,15 +112,121 @@ public class Chunk {
 		setRaw(raw);
 	}
 	
+	/**
+	 * Constructs a new chunk from its serialized data (compression scheme followed by the compressed data),
+	 * as stored within region files. The data is only decompressed and deserialized once
+	 * {@link #getData()} is called for the first time. Do <b>not</b> alter the byte array afterwards!
+	 * 
+	 * @param serialized the serialized data
+	 */
+	public Chunk(@NonNull byte[] serialized) {
+		if(serialized.length < 1)
+			throw new NBTException("Missing compression scheme");
+		
+		this.serialized = serialized;
+		compression = NBTCompression.getCompressionFromId(serialized[0]);
+	}
+	
+	/**
+	 * Constructs a new chunk from its serialized data and the already decoded chunk data.
+	 * The chunk is not dirty, so the serialized data is written back as-is until the chunk is modified
+	 * 
+	 * @param serialized the serialized data
+	 * @param data the decoded chunk data
+	 * @deprecated internal use only
+	 */
+	@Deprecated
+	public Chunk(@NonNull byte[] serialized, @NonNull TagCompound data) {
+		this(serialized);
+		
+		this.data = data;
+		checkpoint = Tag.checkpoint();
+	}
+	
+	/**
+	 * Returns the chunk data. Changes made to this tag (or any of its sub-tags)
+	 * via their methods are detected automatically (see {@link #isDirty()}).
+	 * After altering the underlying maps, lists, or arrays directly,
+	 * {@link #setDirty(boolean) setDirty(true)} has to be called in order to apply those changes.
+	 * <p>
+	 * If the chunk has not been decoded yet, it is decompressed and deserialized first.
+	 * 
+	 * @return the chunk data
+	 */
+	public TagCompound getData() {
+		if(data == null)
+			try {
+				data = RegionUtil.decodeData(ByteBuffer.wrap(serialized));
+				checkpoint = Tag.checkpoint();
+			} catch (IOException e) {
+				throw new NBTException("Failed to deserialize Chunk", e);
+			}
+		
+		return data;
+	}
+	
+	/**
+	 * Checks whether the chunk data has been decoded, i.e. whether {@link #getData()}
+	 * can return the chunk data without decompressing and deserializing it first
+	 * 
+	 * @return whether the chunk data has been decoded
+	 */
+	public boolean isLoaded() {
+		return data != null;
+	}
+	
+	/**
+	 * Drops the decoded chunk data in order to free up memory. The data is decoded
+	 * again from its serialized form once {@link #getData()} is called.
+	 * This has no effect if the chunk is {@link #isDirty() dirty}, since the
+	 * serialized form would be outdated.
+	 * 
+	 * @return this chunk
+	 */
+	public Chunk unload() {
+		if(serialized != null && !isStale()) {
+			data = null;
+			sections = null;
+			sectionsByY = null;
+		}
+		
+		return this;
+	}
+	
+	/**
+	 * Checks whether this chunk is dirty (has been changed since last serialization).
+	 * This is the case if it has been {@link #setDirty(boolean) marked} as dirty, if
+	 * the chunk data has been {@link Tag#isModifiedSince(long) modified} since then,
+	 * or if it has been {@link #patch(String, Number) patched}. Since modifications are propagated
+	 * to the root tag when they are made, this check does not traverse the chunk data
+	 * 
+	 * @return whether this chunk is dirty
+	 */
+	public boolean isDirty() {
+		return patched || isStale();
+	}
+	
+	// whether the serialized data does not reflect the chunk data
+	private boolean isStale() {
+		return dirty || (data != null && data.isModifiedSince(checkpoint));
+	}
+	
 	/**
 	 * Sets whether this chunk is marked as dirty (has been
-	 * changed since last serialization).
+	 * changed since last serialization). Marking the chunk as not dirty
+	 * also discards any modifications to the chunk data made up to this point.
 	 * 
 	 * @param dirty whether this chunk is marked as dirty
 	 * @return this chunk
 	 */
 	public Chunk setDirty(boolean dirty) {
 		this.dirty = dirty;
+		
+		if(!dirty) {
+			checkpoint = Tag.checkpoint();
+			patched = false;
+		}
+		
 		return this;
 	}
 	
@@ -120,9 +251,120 @@ public class Chunk {
 	 */
 	public Chunk setRaw(TagCompound data) {
 		this.data = data;
+		sections = null;
+		sectionsByY = null;
 		return setDirty(true);
 	}
 	
+	/**
+	 * Overwrites a fixed-width number (byte, short, int, long, float, or double) within the chunk data,
+	 * e.g. {@code xPos} or {@code Level.InhabitedTime} (see {@link NBTUtil#patch(ByteBuffer, String, Number)}).
+	 * If the chunk has not been decoded yet, the number is patched directly within the decompressed
+	 * serialized data, which is then compressed again (using the default compression level), without deserializing it.
+	 * Otherwise, the decoded chunk data is modified. Either way, the chunk is marked as dirty
+	 * 
+	 * @param path the path of the number
+	 * @param value the new value
+	 * @return whether the number was found
+	 */
+	public boolean patch(@NonNull String path, @NonNull Number value) {
+		if(data != null || serialized == null)
+			return NBTPatcher.patch(getData(), path, value);
+		
+		byte[] nbt = compression.decompress(ByteBuffer.wrap(serialized, 1, serialized.length - 1));
+		
+		if(!NBTPatcher.patch(ByteBuffer.wrap(nbt), path, value))
+			return false;
+		
+		compress(nbt, compression, Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY);
+		patched = true;
+		
+		return true;
+	}
+	
+	/**
+	 * Returns the data version of the chunk, identifying the Minecraft version it was saved with
+	 * 
+	 * @return the data version, or {@code 0} if absent
+	 */
+	public int getDataVersion() {
+		return getData().get("DataVersion", null) instanceof TagInt version
+			? version.getValue()
+			: 0;
+	}
+	
+	/**
+	 * Returns views of the chunk's sections that contain blocks, in the order they are stored in.
+	 * The views are reused (including their decoded block indices) until the chunk data is modified or replaced
+	 * 
+	 * @return the sections
+	 * @see ChunkSection
+	 */
+	public List<ChunkSection> getSections() {
+		TagCompound data = getData();
+		
+		if(sections != null && !data.isModifiedSince(sectionsAt))
+			return sections;
+		
+		sectionsAt = Tag.checkpoint();
+		
+		// before Minecraft 1.18, the chunk data was wrapped in a "Level" compound
+		TagList<?> list = data.get("sections", null) instanceof TagList<?> sections
+			? sections
+			: data.get("Level", null) instanceof TagCompound level && level.get("Sections", null) instanceof TagList<?> sections
+				? sections
+				: null;
+		
+		if(list == null || list.size() == 0) {
+			sectionsByY = Map.of();
+			return sections = List.of();
+		}
+		
+		int version = getDataVersion();
+		
+		List<ChunkSection> result = new ArrayList<>(list.size());
+		Map<Integer, ChunkSection> byY = new HashMap<>();
+		
+		for(int i = 0; i < list.size(); ++i) {
+			ChunkSection section = new ChunkSection(list.getCompound(i), version);
+			
+			if(section.hasBlocks()) {
+				result.add(section);
+				byY.putIfAbsent(section.getY(), section);
+			}
+		}
+		
+		sectionsByY = byY;
+		return sections = Collections.unmodifiableList(result);
+	}
+	
+	/**
+	 * Returns a view of the section at the given Y position
+	 * 
+	 * @param y the section's Y position (the block Y position divided by 16)
+	 * @return the section, or {@code null} if there is no such section
+	 */
+	public ChunkSection getSection(int y) {
+		getSections();
+		
+		return sectionsByY.get(y);
+	}
+	
+	/**
+	 * Returns the block state at the given position. The section's block indices
+	 * are only decoded once, as long as the chunk data is not modified
+	 * 
+	 * @param x the X position within the chunk ({@code 0 >= x < 16})
+	 * @param y the absolute Y position
+	 * @param z the Z position within the chunk ({@code 0 >= z < 16})
+	 * @return the block state, or {@code null} if there is no section at the given position
+	 */
+	public BlockState getBlock(int x, int y, int z) {
+		ChunkSection section = getSection(y >> 4);
+		
+		return section == null ? null : section.getBlock(x, y & 15, z);
+	}
+	
 	/**
 	 * Serializes this chunk. Do <b>not</b> alter the
 	 * returned byte array!
@@ -133,23 +375,80 @@ public class Chunk {
 	 */
 	@Deprecated
 	public byte[] serialize(NBTCompression compression) {
-		if(!dirty)
-			return serialized;
-		
+		return serialize(compression, Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY);
+	}
+	
+	/**
+	 * Serializes this chunk. Do <b>not</b> alter the
+	 * returned byte array!
+	 * 
+	 * @param compression the default compression scheme
+	 * @param level the compression level
+	 * @param strategy the compression strategy
+	 * @return the serialized data
+	 * @deprecated internal use only
+	 */
+	@Deprecated
+	public byte[] serialize(NBTCompression compression, int level, int strategy) {
 		compression = Objects.requireNonNullElse(this.compression, compression);
 		
-		try(ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+		if(serialized != null && serialized[0] == compression.getId() && !isStale())
+			return serialized;
+		
+		return compress(encode(), compression, level, strategy);
+	}
+	
+	/**
+	 * Serializes the chunk data without compressing it.
+	 * Modifications made to the chunk data from now on mark this chunk as dirty again
+	 * once the result has been {@link #compress(byte[], NBTCompression, int, int) compressed}
+	 * 
+	 * @return the uncompressed NBT data
+	 * @deprecated internal use only
+	 */
+	@Deprecated
+	public byte[] encode() {
+		try(ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes)) {
 			
-			out.write(compression.getId());
+			TagCompound data = getData();
 			
-			NBTUtil.serialize(null, data, out, compression);
+			encodedAt = Tag.checkpoint();
 			
-			return serialized = out.toByteArray();
+			NBTSerializer.serialize(null, data, out);
+			out.flush();
+			
+			return bytes.toByteArray();
 		} catch (IOException e) {
 			throw new NBTException("Failed to serialize Chunk", e);
 		}
 	}
 	
+	/**
+	 * Compresses the {@link #encode() encoded} chunk data and stores the result
+	 * as the serialized data, marking this chunk as not dirty. Do <b>not</b> alter the returned byte array!
+	 * 
+	 * @param encoded the uncompressed NBT data
+	 * @param compression the compression scheme
+	 * @param level the compression level
+	 * @param strategy the compression strategy
+	 * @return the serialized data
+	 * @deprecated internal use only
+	 */
+	@Deprecated
+	public byte[] compress(byte[] encoded, NBTCompression compression, int level, int strategy) {
+		byte[] compressed = compression.compress(ByteBuffer.wrap(encoded), level, strategy);
+		
+		serialized = new byte[compressed.length + 1];
+		serialized[0] = compression.getId();
+		System.arraycopy(compressed, 0, serialized, 1, compressed.length);
+		
+		dirty = false;
+		checkpoint = encodedAt;
+		
+		return serialized;
+	}
+	
 	/**
 	 * Defines the world generation status of this chunk.
 	 * All status except {@link ChunkStatus#FULL} are used for chunks called
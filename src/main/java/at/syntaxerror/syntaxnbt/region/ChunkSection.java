@@ -0,0 +1,288 @@
+/* MIT License
+ * 
+ * Copyright (c) 2022 SyntaxError404
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package at.syntaxerror.syntaxnbt.region;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+
+import at.syntaxerror.syntaxnbt.NBTException;
+import at.syntaxerror.syntaxnbt.internal.PackedBits;
+import at.syntaxerror.syntaxnbt.tag.Tag;
+import at.syntaxerror.syntaxnbt.tag.TagCompound;
+import at.syntaxerror.syntaxnbt.tag.TagList;
+import at.syntaxerror.syntaxnbt.tag.TagLongArray;
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * A view of a 16x16x16 section of a {@link Chunk}, providing access to its blocks.
+ * <p>
+ * Both the current format (Minecraft 1.18+, {@code sections[].block_states}) and the format used
+ * by Minecraft 1.13 to 1.17 ({@code Level.Sections[].Palette/BlockStates}) are supported.
+ * The palette and the block indices are decoded upon first access, and reflect the section's data at that point.
+ * After modifying the section's data, {@link #refresh()} has to be called.
+ * 
+ * @author SyntaxError404
+ * 
+ */
+public class ChunkSection {
+	
+	/** The number of blocks in a section */
+	public static final int BLOCK_COUNT = 4096;
+	
+	// first data version (20w17a) where entries do not span two longs
+	private static final int NON_SPANNING_VERSION = 2529;
+	
+	// block states always use at least 4 bits per entry
+	private static final int MIN_BITS = 4;
+	
+	/**
+	 * Returns the section's data
+	 * 
+	 * @return the section's data
+	 */
+	@Getter
+	private final TagCompound tag;
+	
+	private final boolean legacy;
+	private final boolean spanning;
+	
+	private List<BlockState> palette;
+	
+	// palette indices in YZX order, null if not decoded yet or if the palette only has a single entry
+	private short[] indices;
+	
+	/**
+	 * Creates a view of a section compound
+	 * 
+	 * @param tag the section's data
+	 * @param dataVersion the chunk's data version (see {@link Chunk#getDataVersion()})
+	 */
+	public ChunkSection(@NonNull TagCompound tag, int dataVersion) {
+		this.tag = tag;
+		
+		legacy = !tag.has("block_states");
+		spanning = dataVersion < NON_SPANNING_VERSION;
+	}
+	
+	/**
+	 * Returns the section's Y position (the block Y position divided by 16)
+	 * 
+	 * @return the section's Y position
+	 */
+	public int getY() {
+		Tag<?> y = tag.get("Y", null);
+		
+		return y != null && y.getValue() instanceof Number number
+			? number.intValue()
+			: 0;
+	}
+	
+	/**
+	 * Checks whether the section defines any blocks. Sections without blocks only hold other data, such as light
+	 * 
+	 * @return whether the section has blocks
+	 */
+	public boolean hasBlocks() {
+		return legacy
+			? tag.get("Palette", null) instanceof TagList
+			: tag.getCompound("block_states").get("palette", null) instanceof TagList;
+	}
+	
+	/**
+	 * Returns the (unmodifiable) palette of block states used in this section.
+	 * The palette may contain block states which are not actually present in the section
+	 * 
+	 * @return the palette
+	 */
+	public List<BlockState> getPalette() {
+		if(palette == null) {
+			TagList<?> list = legacy
+				? listOrNull(tag, "Palette")
+				: listOrNull(tag.getCompound("block_states"), "palette");
+			
+			if(list == null || list.size() == 0)
+				throw new NBTException("Section does not have any blocks");
+			
+			List<BlockState> states = new ArrayList<>(list.size());
+			
+			for(int i = 0; i < list.size(); ++i)
+				states.add(BlockState.fromTag(list.getCompound(i)));
+			
+			palette = Collections.unmodifiableList(states);
+		}
+		
+		return palette;
+	}
+	
+	private static TagList<?> listOrNull(TagCompound tag, String key) {
+		return tag.get(key, null) instanceof TagList<?> list ? list : null;
+	}
+	
+	private short[] indices() {
+		if(indices == null) {
+			List<BlockState> palette = getPalette();
+			
+			if(palette.size() == 1)
+				return null;
+			
+			Tag<?> data = legacy
+				? tag.get("BlockStates", null)
+				: tag.getCompound("block_states").get("data", null);
+			
+			if(!(data instanceof TagLongArray array))
+				throw new NBTException("Section is missing its block data");
+			
+			int bits = Math.max(MIN_BITS, PackedBits.bitsFor(palette.size()));
+			
+			short[] values = array.unpack(bits, spanning, new short[BLOCK_COUNT]);
+			
+			int max = 0;
+			
+			for(short value : values)
+				max = Math.max(max, value & 0xFFFF);
+			
+			if(max >= palette.size())
+				throw new NBTException("Invalid palette index " + max);
+			
+			indices = values;
+		}
+		
+		return indices;
+	}
+	
+	/**
+	 * Discards the decoded palette and block indices, so they are decoded again
+	 * from the section's data upon next access
+	 * 
+	 * @return this section
+	 */
+	public ChunkSection refresh() {
+		palette = null;
+		indices = null;
+		return this;
+	}
+	
+	/**
+	 * Returns the block state at the given position within this section
+	 * 
+	 * @param x the X position within the section ({@code 0 >= x < 16})
+	 * @param y the Y position within the section ({@code 0 >= y < 16})
+	 * @param z the Z position within the section ({@code 0 >= z < 16})
+	 * @return the block state
+	 */
+	public BlockState getBlock(int x, int y, int z) {
+		if(((x | y | z) & ~15) != 0)
+			throw new NBTException("Block position out of bounds: " + x + ", " + y + ", " + z);
+		
+		List<BlockState> palette = getPalette();
+		short[] indices = indices();
+		
+		return indices == null
+			? palette.get(0)
+			: palette.get(indices[(y << 8) | (z << 4) | x]);
+	}
+	
+	/**
+	 * Counts the blocks matching a predicate. The predicate is only evaluated once per palette entry,
+	 * and the block indices are only decoded if some, but not all, palette entries match
+	 * 
+	 * @param predicate the predicate
+	 * @return the number of matching blocks
+	 */
+	public int countBlocks(@NonNull Predicate<BlockState> predicate) {
+		boolean[] matches = match(predicate);
+		
+		if(matches == null)
+			return 0;
+		
+		short[] indices = indices();
+		
+		if(indices == null)
+			return BLOCK_COUNT;
+		
+		// adding 0 or 1 avoids mispredicted branches
+		int[] weights = new int[matches.length];
+		
+		for(int i = 0; i < matches.length; ++i)
+			weights[i] = matches[i] ? 1 : 0;
+		
+		int count = 0;
+		
+		for(short index : indices)
+			count += weights[index];
+		
+		return count;
+	}
+	
+	/**
+	 * Checks whether the section contains a block matching a predicate. If no palette entry
+	 * matches, this returns {@code false} without decoding the block indices
+	 * 
+	 * @param predicate the predicate
+	 * @return whether a matching block is present
+	 */
+	public boolean containsBlock(@NonNull Predicate<BlockState> predicate) {
+		boolean[] matches = match(predicate);
+		
+		if(matches == null)
+			return false;
+		
+		short[] indices = indices();
+		
+		if(indices == null)
+			return true;
+		
+		for(short index : indices)
+			if(matches[index])
+				return true;
+		
+		return false;
+	}
+	
+	/**
+	 * Checks whether the section contains a block, regardless of its properties (see {@link BlockState#is(String)})
+	 * 
+	 * @param name the block name
+	 * @return whether the block is present
+	 */
+	public boolean containsBlock(@NonNull String name) {
+		return containsBlock(state -> state.is(name));
+	}
+	
+	// evaluates the predicate for each palette entry, or returns null if no entry matches
+	private boolean[] match(Predicate<BlockState> predicate) {
+		List<BlockState> palette = getPalette();
+		
+		boolean[] matches = new boolean[palette.size()];
+		boolean any = false;
+		
+		for(int i = 0; i < matches.length; ++i)
+			any |= matches[i] = predicate.test(palette.get(i));
+		
+		return any ? matches : null;
+	}
+	
+}
@@ -0,0 +1,47 @@
+/* MIT License
+ * 
+ * Copyright (c) 2022 SyntaxError404
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package at.syntaxerror.syntaxnbt.region;
+
+/**
+ * Defines how the compression scheme of each chunk is chosen when
+ * a {@link Region} is saved in adaptive mode ({@link Region#setCompressionPolicy(CompressionPolicy)}).
+ * <p>
+ * The available schemes and levels are measured on a sample of the chunks to be saved.
+ * Based on these measurements, the most suitable scheme is chosen for each chunk individually,
+ * taking into account that chunks always occupy a whole number of 4KiB sectors.
+ * 
+ * @author SyntaxError404
+ * 
+ */
+public enum CompressionPolicy {
+
+	/** minimizes the time required for reading and decompressing chunks */
+	FASTEST_LOAD,
+	
+	/** minimizes the size of the region file */
+	SMALLEST,
+	
+	/** minimizes the compression and decompression time while keeping the size close to the smallest possible size */
+	BALANCED
+	
+}
@@ -22,14 +22,20 @@
  */
 package at.syntaxerror.syntaxnbt.region;
 
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.zip.Deflater;
+
 import at.syntaxerror.syntaxnbt.NBTCompression;
-import at.syntaxerror.syntaxnbt.NBTException;
+import at.syntaxerror.syntaxnbt.internal.RegionUtil;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.Setter;
 
 /**
- * A structure holding a 32x32 area of {@link Chunk Chunks}
+ * A structure holding a 32x32 area of {@link Chunk Chunks}.
+ * Chunks and timestamps can be accessed from multiple threads at once
  * 
  * @author SyntaxError404
  * 
@@ -54,24 +60,80 @@ public class Region {
 	@Setter
 	private NBTCompression compression;
 	
-	private int[] timestamps;
+	/**
+	 * -- GETTER --
+	 * 
+	 * Returns the compression level for chunks
+	 * 
+	 * @return the compression level
+	 * 
+	 * -- SETTER --
+	 * 
+	 * Sets the compression level for chunks ({@code 0-9} or {@link Deflater#DEFAULT_COMPRESSION}),
+	 * e.g. {@link Deflater#BEST_SPEED} for frequent saves or {@link Deflater#BEST_COMPRESSION} for archival purposes
+	 * 
+	 * @param compressionLevel the compression level
+	 */
+	@Getter
+	@Setter
+	private int compressionLevel;
+	
+	/**
+	 * -- GETTER --
+	 * 
+	 * Returns the compression strategy for chunks
+	 * 
+	 * @return the compression strategy
+	 * 
+	 * -- SETTER --
+	 * 
+	 * Sets the compression strategy for chunks ({@link Deflater#DEFAULT_STRATEGY},
+	 * {@link Deflater#FILTERED}, or {@link Deflater#HUFFMAN_ONLY})
+	 * 
+	 * @param compressionStrategy the compression strategy
+	 */
+	@Getter
+	@Setter
+	private int compressionStrategy;
+	
+	/**
+	 * -- GETTER --
+	 * 
+	 * Returns the policy for choosing the compression scheme of each chunk,
+	 * or {@code null} if adaptive compression is disabled
+	 * 
+	 * @return the compression policy
+	 * 
+	 * -- SETTER --
+	 * 
+	 * Sets the policy for choosing the compression scheme of each chunk.
+	 * When set, the compression scheme of every modified chunk is chosen automatically
+	 * upon saving (overriding {@link Chunk#setCompression(NBTCompression)}), based on measurements
+	 * taken on a sample of the chunks. {@code null} disables adaptive compression
+	 * 
+	 * @param compressionPolicy the compression policy
+	 */
+	@Getter
+	@Setter
+	private CompressionPolicy compressionPolicy;
+	
+	private final AtomicIntegerArray timestamps;
 	
-	private Chunk[] chunks;
+	private final AtomicReferenceArray<Chunk> chunks;
 	
 	/**
 	 * Constructs a new region
 	 */
 	public Region() {
 		compression = NBTCompression.ZLIB;
-		timestamps = new int[1024];
-		chunks = new Chunk[1024];
+		compressionLevel = Deflater.DEFAULT_COMPRESSION;
+		compressionStrategy = Deflater.DEFAULT_STRATEGY;
+		timestamps = new AtomicIntegerArray(1024);
+		chunks = new AtomicReferenceArray<>(1024);
 	}
 	
 	private int at(int x, int z) {
-		if(x < 0 || x > 31 || z < 0 || z > 31)
-			throw new NBTException("Chunk coordinate out of bounds");
-		
-		return x * 32 + z;
+		return RegionUtil.index(x, z);
 	}
 
 	
@@ -84,7 +146,7 @@ public class Region {
 	 * @return a specific chunk
 	 */
 	public Chunk getChunk(int x, int z) {
-		return chunks[at(x, z)];
+		return chunks.get(at(x, z));
 	}
 
 	/**
@@ -96,7 +158,21 @@ public class Region {
 	 * @return this region
 	 */
 	public Region setChunk(int x, int z, Chunk chunk) {
-		chunks[at(x, z)] = chunk;
+		chunks.set(at(x, z), chunk);
+		return this;
+	}
+	
+	/**
+	 * Decodes all chunks within this region that have not been decoded yet
+	 * (see {@link Chunk#isLoaded()}) on multiple threads, e.g. using
+	 * {@link java.util.concurrent.ForkJoinPool#commonPool() ForkJoinPool.commonPool()}.
+	 * This method blocks until all chunks are decoded
+	 * 
+	 * @param executor the executor to decode the chunks on
+	 * @return this region
+	 */
+	public Region decodeChunks(@NonNull Executor executor) {
+		RegionUtil.decodeAll(this, executor);
 		return this;
 	}
 	
@@ -108,7 +184,7 @@ public class Region {
 	 * @return the timestamp for a specific chunk
 	 */
 	public int getTimestamp(int x, int z) {
-		return timestamps[at(x, z)];
+		return timestamps.get(at(x, z));
 	}
 	
 	/**
@@ -120,7 +196,7 @@ public class Region {
 	 * @return this region
 	 */
 	public Region setTimestamp(int x, int z, int time) {
-		timestamps[at(x, z)] = time;
+		timestamps.set(at(x, z), time);
 		return this;
 	}
 	
@@ -0,0 +1,459 @@
+/* MIT License
+ * 
+ * Copyright (c) 2022 SyntaxError404
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package at.syntaxerror.syntaxnbt.region;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import at.syntaxerror.syntaxnbt.NBTException;
+import at.syntaxerror.syntaxnbt.internal.AsyncChunkIO;
+import at.syntaxerror.syntaxnbt.internal.RegionUtil;
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * A cache of open {@link RegionFile region files} within a directory (usually a world's {@code region} folder).
+ * <p>
+ * Chunks are addressed by their absolute chunk coordinates and routed to the corresponding region file.
+ * At most {@link #getCapacity() capacity} region files are kept open; when this limit is exceeded, the least
+ * recently used region files are closed. Region files currently in use (see {@link #withRegion(int, int, RegionAction)})
+ * are never closed, which may temporarily exceed the limit.
+ * <p>
+ * The cache is thread-safe, and so are the region files it hands out (see {@link RegionFile}).
+ * Region files are opened and closed without holding the cache's lock, so slow file systems
+ * only delay accesses to the region being opened.
+ * 
+ * @author SyntaxError404
+ * 
+ */
+public class RegionCache implements Closeable {
+
+	/**
+	 * Returns the directory containing the region files
+	 * 
+	 * @return the directory
+	 */
+	@Getter
+	private final Path directory;
+	
+	/**
+	 * Returns the maximum number of region files kept open
+	 * 
+	 * @return the maximum number of open region files
+	 */
+	@Getter
+	private final int capacity;
+	
+	/**
+	 * Checks whether the region files are opened for writing
+	 * 
+	 * @return whether the region files are writable
+	 */
+	@Getter
+	private final boolean writable;
+	
+	// access-ordered, the eldest entry is the least recently used one
+	private final LinkedHashMap<Long, Entry> entries;
+	
+	private boolean closed;
+	
+	private final AsyncChunkIO async = new AsyncChunkIO();
+	
+	/**
+	 * Constructs a new cache for reading region files
+	 * 
+	 * @param directory the directory containing the region files
+	 * @param capacity the maximum number of region files kept open
+	 */
+	public RegionCache(@NonNull Path directory, int capacity) {
+		this(directory, capacity, false);
+	}
+	
+	/**
+	 * Constructs a new cache for reading and optionally writing region files.
+	 * If writable, missing region files are created once a chunk is written into them
+	 * 
+	 * @param directory the directory containing the region files
+	 * @param capacity the maximum number of region files kept open
+	 * @param writable whether the region files should be opened for writing
+	 */
+	public RegionCache(@NonNull Path directory, int capacity, boolean writable) {
+		if(capacity < 1)
+			throw new NBTException("Capacity must be positive");
+		
+		this.directory = directory;
+		this.capacity = capacity;
+		this.writable = writable;
+		
+		entries = new LinkedHashMap<>(16, 0.75f, true);
+	}
+	
+	/**
+	 * Returns the number of region files currently open
+	 * 
+	 * @return the number of open region files
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+	
+	/**
+	 * Reads a specific chunk. A value of {@code null}
+	 * suggest that the chunk has not been generated yet.
+	 * 
+	 * @param chunkX the chunk's absolute X position
+	 * @param chunkZ the chunk's absolute Z position
+	 * @return the chunk
+	 * @throws IOException if an I/O error occured
+	 * @see RegionFile#readChunk(int, int)
+	 */
+	public Chunk readChunk(int chunkX, int chunkZ) throws IOException {
+		return withChunk(chunkX, chunkZ, false, file -> file.readChunk(chunkX & 31, chunkZ & 31));
+	}
+	
+	/**
+	 * Reads a specific chunk without decoding it. A value of {@code null}
+	 * suggest that the chunk has not been generated yet.
+	 * 
+	 * @param chunkX the chunk's absolute X position
+	 * @param chunkZ the chunk's absolute Z position
+	 * @return the chunk
+	 * @throws IOException if an I/O error occured
+	 * @see RegionFile#readChunkLazy(int, int)
+	 */
+	public Chunk readChunkLazy(int chunkX, int chunkZ) throws IOException {
+		return withChunk(chunkX, chunkZ, false, file -> file.readChunkLazy(chunkX & 31, chunkZ & 31));
+	}
+	
+	/**
+	 * Reads a specific chunk asynchronously on the {@link AsyncChunkIO#defaultExecutor() default executor},
+	 * which uses virtual threads if available (otherwise a bounded thread pool)
+	 * 
+	 * @param chunkX the chunk's absolute X position
+	 * @param chunkZ the chunk's absolute Z position
+	 * @return the chunk
+	 * @see RegionFile#loadChunkAsync(int, int)
+	 */
+	public CompletableFuture<Chunk> loadChunkAsync(int chunkX, int chunkZ) {
+		return loadChunkAsync(chunkX, chunkZ, AsyncChunkIO.defaultExecutor());
+	}
+	
+	/**
+	 * Reads a specific chunk asynchronously. Concurrent requests for the same chunk share a single read.
+	 * Pending {@link #saveChunkAsync(int, int, Chunk, Executor) saves} of the chunk are completed first
+	 * 
+	 * @param chunkX the chunk's absolute X position
+	 * @param chunkZ the chunk's absolute Z position
+	 * @param executor the executor to read the chunk on
+	 * @return the chunk
+	 * @see RegionFile#loadChunkAsync(int, int, Executor)
+	 */
+	public CompletableFuture<Chunk> loadChunkAsync(int chunkX, int chunkZ, @NonNull Executor executor) {
+		return async.load(key(chunkX, chunkZ), () -> readChunk(chunkX, chunkZ), executor);
+	}
+	
+	/**
+	 * Returns the timestamp for a specific chunk
+	 * 
+	 * @param chunkX the chunk's absolute X position
+	 * @param chunkZ the chunk's absolute Z position
+	 * @return the timestamp, or {@code 0} if the chunk has not been generated yet
+	 * @throws IOException if an I/O error occured
+	 */
+	public int getTimestamp(int chunkX, int chunkZ) throws IOException {
+		Integer timestamp = withChunk(chunkX, chunkZ, false, file -> file.getTimestamp(chunkX & 31, chunkZ & 31));
+		
+		return timestamp == null ? 0 : timestamp;
+	}
+	
+	/**
+	 * Writes a specific chunk
+	 * 
+	 * @param chunkX the chunk's absolute X position
+	 * @param chunkZ the chunk's absolute Z position
+	 * @param chunk the chunk
+	 * @throws IOException if an I/O error occured
+	 * @see RegionFile#writeChunk(int, int, Chunk)
+	 */
+	public void writeChunk(int chunkX, int chunkZ, @NonNull Chunk chunk) throws IOException {
+		withChunk(chunkX, chunkZ, true, file -> {
+			file.writeChunk(chunkX & 31, chunkZ & 31, chunk);
+			return null;
+		});
+	}
+	
+	/**
+	 * Writes a specific chunk asynchronously on the {@link AsyncChunkIO#defaultExecutor() default executor},
+	 * which uses virtual threads if available (otherwise a bounded thread pool)
+	 * 
+	 * @param chunkX the chunk's absolute X position
+	 * @param chunkZ the chunk's absolute Z position
+	 * @param chunk the chunk
+	 * @return a future completed once the chunk is written
+	 * @see RegionFile#saveChunkAsync(int, int, Chunk)
+	 */
+	public CompletableFuture<Void> saveChunkAsync(int chunkX, int chunkZ, @NonNull Chunk chunk) {
+		return saveChunkAsync(chunkX, chunkZ, chunk, AsyncChunkIO.defaultExecutor());
+	}
+	
+	/**
+	 * Writes a specific chunk asynchronously. Saves of the same chunk are performed in the order
+	 * they were requested. The chunk must not be modified until the returned future is complete
+	 * 
+	 * @param chunkX the chunk's absolute X position
+	 * @param chunkZ the chunk's absolute Z position
+	 * @param chunk the chunk
+	 * @param executor the executor to write the chunk on
+	 * @return a future completed once the chunk is written
+	 * @see RegionFile#saveChunkAsync(int, int, Chunk, Executor)
+	 */
+	public CompletableFuture<Void> saveChunkAsync(int chunkX, int chunkZ, @NonNull Chunk chunk, @NonNull Executor executor) {
+		return async.save(key(chunkX, chunkZ), () -> {
+			writeChunk(chunkX, chunkZ, chunk);
+			return null;
+		}, executor);
+	}
+	
+	/**
+	 * Removes a specific chunk
+	 * 
+	 * @param chunkX the chunk's absolute X position
+	 * @param chunkZ the chunk's absolute Z position
+	 * @throws IOException if an I/O error occured
+	 * @see RegionFile#deleteChunk(int, int)
+	 */
+	public void deleteChunk(int chunkX, int chunkZ) throws IOException {
+		withChunk(chunkX, chunkZ, false, file -> {
+			file.deleteChunk(chunkX & 31, chunkZ & 31);
+			return null;
+		});
+	}
+	
+	private <T> T withChunk(int chunkX, int chunkZ, boolean create, RegionAction<T> action) throws IOException {
+		int regionX = chunkX >> 5;
+		int regionZ = chunkZ >> 5;
+		
+		if(!create && !entryExists(regionX, regionZ) && !Files.exists(RegionUtil.regionFile(directory, regionX, regionZ)))
+			return null;
+		
+		return withRegion(regionX, regionZ, action);
+	}
+	
+	/**
+	 * Performs an action on a specific region file. The region file is opened if necessary, and is
+	 * guaranteed to stay open until the action completes
+	 * 
+	 * @param <T> the result type
+	 * @param regionX the region's X position
+	 * @param regionZ the region's Z position
+	 * @param action the action
+	 * @return the result of the action
+	 * @throws IOException if an I/O error occured
+	 */
+	public <T> T withRegion(int regionX, int regionZ, @NonNull RegionAction<T> action) throws IOException {
+		Entry entry = acquire(regionX, regionZ);
+		
+		try {
+			return action.apply(entry.file.join());
+		} finally {
+			release(entry);
+		}
+	}
+	
+	private synchronized boolean entryExists(int regionX, int regionZ) {
+		return entries.containsKey(key(regionX, regionZ));
+	}
+	
+	private Entry acquire(int regionX, int regionZ) throws IOException {
+		Entry entry;
+		boolean open;
+		
+		synchronized(this) {
+			if(closed)
+				throw new NBTException("Region cache is closed");
+			
+			Long key = key(regionX, regionZ);
+			
+			entry = entries.get(key);
+			open = entry == null;
+			
+			if(open) {
+				entry = new Entry(key);
+				entries.put(key, entry);
+			}
+			
+			++entry.references;
+		}
+		
+		// the region file is opened without holding the lock, so accesses to other regions are not blocked
+		if(open)
+			try {
+				entry.file.complete(new RegionFile(RegionUtil.regionFile(directory, regionX, regionZ), false, writable));
+			} catch (Throwable e) {
+				entry.file.completeExceptionally(e);
+				discard(entry);
+				throw e;
+			}
+		
+		// concurrent requests for the same region wait until the region file is opened
+		else try {
+			entry.file.join();
+		} catch (CompletionException e) {
+			discard(entry);
+			throw new IOException("Failed to open region file", e.getCause());
+		}
+		
+		closeAll(trim());
+		
+		return entry;
+	}
+	
+	// removes an entry whose region file could not be opened
+	private synchronized void discard(Entry entry) {
+		--entry.references;
+		entries.remove(entry.key, entry);
+	}
+	
+	private void release(Entry entry) throws IOException {
+		List<RegionFile> files;
+		
+		synchronized(this) {
+			--entry.references;
+			
+			if(closed)
+				files = entry.references == 0 ? List.of(entry.file.join()) : List.of();
+			
+			else files = trim();
+		}
+		
+		closeAll(files);
+	}
+	
+	// removes the least recently used region files which are not in use. The caller has to close them
+	private synchronized List<RegionFile> trim() {
+		List<RegionFile> evicted = new ArrayList<>();
+		
+		Iterator<Entry> iterator = entries.values().iterator();
+		
+		while(entries.size() > capacity && iterator.hasNext()) {
+			Entry entry = iterator.next();
+			
+			// entries which are not in use always hold an open region file
+			if(entry.references == 0) {
+				iterator.remove();
+				evicted.add(entry.file.join());
+			}
+		}
+		
+		return evicted;
+	}
+	
+	private static void closeAll(List<RegionFile> files) throws IOException {
+		IOException error = null;
+		
+		for(RegionFile file : files)
+			try {
+				file.close();
+			} catch (IOException e) {
+				if(error == null)
+					error = e;
+				else error.addSuppressed(e);
+			}
+		
+		if(error != null)
+			throw error;
+	}
+	
+	private static long key(int regionX, int regionZ) {
+		return ((long) regionX << 32) | (regionZ & 0xFFFFFFFFL);
+	}
+	
+	/**
+	 * Closes all region files. Region files currently in use are closed as soon as they are released
+	 */
+	@Override
+	public void close() throws IOException {
+		List<RegionFile> files = new ArrayList<>();
+		
+		synchronized(this) {
+			if(closed)
+				return;
+			
+			closed = true;
+			
+			for(Entry entry : entries.values())
+				if(entry.references == 0)
+					files.add(entry.file.join());
+			
+			entries.clear();
+		}
+		
+		closeAll(files);
+	}
+	
+	private static class Entry {
+		
+		private final Long key;
+		
+		// completed once the region file is opened
+		private final CompletableFuture<RegionFile> file = new CompletableFuture<>();
+		
+		private int references;
+		
+		private Entry(Long key) {
+			this.key = key;
+		}
+		
+	}
+	
+	/**
+	 * An action performed on a region file
+	 * 
+	 * @param <T> the result type
+	 * @author SyntaxError404
+	 * 
+	 */
+	@FunctionalInterface
+	public static interface RegionAction<T> {
+		
+		/**
+		 * Performs the action
+		 * 
+		 * @param file the region file
+		 * @return the result
+		 * @throws IOException if an I/O error occured
+		 */
+		T apply(RegionFile file) throws IOException;
+		
+	}
+	
+}
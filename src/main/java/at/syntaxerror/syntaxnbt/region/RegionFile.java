@@ -0,0 +1,996 @@
+/* MIT License
+ * 
+ * Copyright (c) 2022 SyntaxError404
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package at.syntaxerror.syntaxnbt.region;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import at.syntaxerror.syntaxnbt.NBTCompression;
+import at.syntaxerror.syntaxnbt.NBTException;
+import at.syntaxerror.syntaxnbt.internal.AsyncChunkIO;
+import at.syntaxerror.syntaxnbt.internal.CompressionSelector;
+import at.syntaxerror.syntaxnbt.internal.RegionUtil;
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * A handle to a region file on disk, allowing single chunks to be read
+ * without loading the whole {@link Region}. The location and timestamp
+ * table is read once when the file is opened. Optionally, the file can
+ * be {@link #RegionFile(Path, boolean) memory-mapped}.
+ * <p>
+ * Region files opened for {@link #RegionFile(Path, boolean, boolean) writing} only
+ * rewrite the chunks that are actually modified. A modified chunk is always written to the first run
+ * of free sectors that is large enough (or appended to the end of the file), and its previous sectors are
+ * only released once the header points to the new ones, so that an interrupted write never damages
+ * the previous version of the chunk. Chunks which are too big for the region file (more than 1MiB)
+ * are stored in external files ({@code c.<x>.<z>.mcc}) next to the region file, as done by Minecraft.
+ * <p>
+ * Region files are thread-safe. Chunks are guarded by a set of striped read-write locks, so any
+ * number of threads can read chunks at once, and chunks in different slots can be written concurrently.
+ * Only the allocation of free sectors is synchronized across the whole file (without performing any I/O).
+ * {@link #compact()} blocks all other operations.
+ * 
+ * @author SyntaxError404
+ * 
+ */
+@SuppressWarnings("deprecation")
+public class RegionFile implements Closeable {
+
+	/**
+	 * Returns the path of the region file
+	 * 
+	 * @return the path
+	 */
+	@Getter
+	private final Path path;
+	
+	/**
+	 * Checks whether the region file is memory-mapped
+	 * 
+	 * @return whether the region file is memory-mapped
+	 */
+	@Getter
+	private final boolean mapped;
+	
+	/**
+	 * Checks whether the region file is opened for writing
+	 * 
+	 * @return whether the region file is writable
+	 */
+	@Getter
+	private final boolean writable;
+	
+	// number of locks guarding the chunk slots (power of two)
+	private static final int STRIPES = 64;
+	
+	private volatile FileChannel channel;
+	
+	private final MappedByteBuffer mapping;
+	
+	// guarded by the lock of the respective chunk slot
+	private final int[] locations;
+	private final int[] timestamps;
+	
+	private final ReadWriteLock[] locks;
+	
+	// sectors occupied by the header or a chunk, guarded by itself
+	private final BitSet used;
+	
+	private final AsyncChunkIO async = new AsyncChunkIO();
+	
+	/**
+	 * Opens a region file for reading
+	 * 
+	 * @param path the path of the region file
+	 * @throws IOException if an I/O error occured
+	 */
+	public RegionFile(@NonNull Path path) throws IOException {
+		this(path, false);
+	}
+	
+	/**
+	 * Opens a region file for reading.
+	 * <p>
+	 * If {@code mapped} is {@code true}, the whole file is mapped into memory via {@link FileChannel#map}.
+	 * Chunk data is then handed to the decompressor directly from the mapping without being copied,
+	 * which is considerably faster when scanning many chunks. The buffers returned by
+	 * {@link #readChunkData(int, int)} are read-only views of the mapping in this case
+	 * 
+	 * @param path the path of the region file
+	 * @param mapped whether the file should be memory-mapped
+	 * @throws IOException if an I/O error occured
+	 */
+	public RegionFile(@NonNull Path path, boolean mapped) throws IOException {
+		this(path, mapped, false);
+	}
+	
+	/**
+	 * Opens a region file for reading and optionally writing. If the file is opened for writing
+	 * and does not exist yet, an empty region file is created. Memory-mapped region files
+	 * cannot be opened for writing
+	 * 
+	 * @param path the path of the region file
+	 * @param mapped whether the file should be memory-mapped (see {@link #RegionFile(Path, boolean)})
+	 * @param writable whether the file should be opened for writing
+	 * @throws IOException if an I/O error occured
+	 */
+	public RegionFile(@NonNull Path path, boolean mapped, boolean writable) throws IOException {
+		if(mapped && writable)
+			throw new NBTException("Memory-mapped region files cannot be written to");
+		
+		this.path = path;
+		this.mapped = mapped;
+		this.writable = writable;
+		
+		channel = open();
+		
+		locations = new int[1024];
+		timestamps = new int[1024];
+		
+		locks = new ReadWriteLock[STRIPES];
+		
+		for(int i = 0; i < STRIPES; ++i)
+			locks[i] = new ReentrantReadWriteLock();
+		
+		used = new BitSet();
+		
+		try {
+			// files without a complete header (e.g. empty region files, which are created by Minecraft occasionally)
+			// are treated as empty region files
+			if(writable && channel.size() < RegionUtil.HEADER_SIZE)
+				write(ByteBuffer.allocate(RegionUtil.HEADER_SIZE), 0);
+			
+			mapping = mapped
+				? channel.map(MapMode.READ_ONLY, 0, channel.size())
+				: null;
+			
+			readHeader();
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+	
+	private FileChannel open() throws IOException {
+		return writable
+			? FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE)
+			: FileChannel.open(path, StandardOpenOption.READ);
+	}
+	
+	private void readHeader() throws IOException {
+		if(channel.size() < RegionUtil.HEADER_SIZE) {
+			Arrays.fill(locations, 0);
+			Arrays.fill(timestamps, 0);
+		}
+		
+		else if(mapped)
+			RegionUtil.readHeader(mapping, locations, timestamps);
+		
+		else {
+			ByteBuffer header = ByteBuffer.allocate(RegionUtil.HEADER_SIZE);
+			
+			read(header, 0);
+			
+			RegionUtil.readHeader(header.flip(), locations, timestamps);
+		}
+		
+		synchronized(used) {
+			used.clear();
+			used.set(0, 2);
+			
+			for(int location : locations)
+				if(location != 0)
+					used.set(RegionUtil.offset(location), RegionUtil.offset(location) + RegionUtil.sectorCount(location));
+		}
+	}
+	
+	private Lock readLock(int index) {
+		return locks[index & (STRIPES - 1)].readLock();
+	}
+	
+	private Lock writeLock(int index) {
+		return locks[index & (STRIPES - 1)].writeLock();
+	}
+	
+	private void write(ByteBuffer buffer, long position) throws IOException {
+		while(buffer.hasRemaining())
+			position += channel.write(buffer, position);
+	}
+	
+	private void read(ByteBuffer buffer, long position) throws IOException {
+		while(buffer.hasRemaining()) {
+			int n = channel.read(buffer, position);
+			
+			if(n < 0)
+				throw new EOFException("Unexpected end of region file");
+			
+			position += n;
+		}
+	}
+	
+	/**
+	 * Checks whether a specific chunk is present in the region file
+	 * 
+	 * @param x chunk's X position ({@code 0 >= x < 32})
+	 * @param z chunk's Z position ({@code 0 >= z < 32})
+	 * @return whether the chunk is present
+	 */
+	public boolean hasChunk(int x, int z) {
+		int index = RegionUtil.index(x, z);
+		Lock lock = readLock(index);
+		
+		lock.lock();
+		
+		try {
+			return locations[index] != 0;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Returns the timestamp for a specific chunk
+	 * 
+	 * @param x chunk's X position ({@code 0 >= x < 32})
+	 * @param z chunk's Z position ({@code 0 >= z < 32})
+	 * @return the timestamp for a specific chunk
+	 */
+	public int getTimestamp(int x, int z) {
+		int index = RegionUtil.index(x, z);
+		Lock lock = readLock(index);
+		
+		lock.lock();
+		
+		try {
+			return timestamps[index];
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Returns a summary of the region file, based on the location and timestamp table.
+	 * Chunks written while the summary is created may or may not be reflected by it
+	 * 
+	 * @return the summary
+	 */
+	public RegionSummary getSummary() {
+		int[] locations = new int[1024];
+		int[] timestamps = new int[1024];
+		
+		snapshot(locations, timestamps);
+		
+		return new RegionSummary(path, locations, timestamps);
+	}
+	
+	// copies the location and timestamp table
+	private void snapshot(int[] locations, int[] timestamps) {
+		for(int stripe = 0; stripe < STRIPES; ++stripe) {
+			Lock lock = readLock(stripe);
+			
+			lock.lock();
+			
+			try {
+				for(int index = stripe; index < 1024; index += STRIPES) {
+					locations[index] = this.locations[index];
+					timestamps[index] = this.timestamps[index];
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+	
+	/**
+	 * Reads a specific chunk. A value of {@code null}
+	 * suggest that the chunk has not been generated yet.
+	 * 
+	 * @param x chunk's X position ({@code 0 >= x < 32})
+	 * @param z chunk's Z position ({@code 0 >= z < 32})
+	 * @return the chunk
+	 * @throws IOException if an I/O error occured
+	 */
+	public Chunk readChunk(int x, int z) throws IOException {
+		ByteBuffer data = readChunkData(x, z);
+		
+		return data == null ? null : RegionUtil.decodeChunk(data);
+	}
+	
+	/**
+	 * Reads a specific chunk without decoding it. The chunk data is only decompressed and
+	 * deserialized once {@link Chunk#getData()} is called. A value of {@code null}
+	 * suggest that the chunk has not been generated yet.
+	 * 
+	 * @param x chunk's X position ({@code 0 >= x < 32})
+	 * @param z chunk's Z position ({@code 0 >= z < 32})
+	 * @return the chunk
+	 * @throws IOException if an I/O error occured
+	 */
+	public Chunk readChunkLazy(int x, int z) throws IOException {
+		ByteBuffer data = readChunkData(x, z);
+		
+		if(data == null)
+			return null;
+		
+		byte[] serialized = new byte[data.remaining()];
+		data.get(serialized);
+		
+		return new Chunk(serialized);
+	}
+	
+	/**
+	 * Reads a specific chunk asynchronously (see {@link #readChunk(int, int)}) on the
+	 * {@link AsyncChunkIO#defaultExecutor() default executor}, which uses virtual threads if available (otherwise a bounded thread pool)
+	 * 
+	 * @param x chunk's X position ({@code 0 >= x < 32})
+	 * @param z chunk's Z position ({@code 0 >= z < 32})
+	 * @return the chunk
+	 */
+	public CompletableFuture<Chunk> loadChunkAsync(int x, int z) {
+		return loadChunkAsync(x, z, AsyncChunkIO.defaultExecutor());
+	}
+	
+	/**
+	 * Reads a specific chunk asynchronously (see {@link #readChunk(int, int)}). Concurrent requests
+	 * for the same chunk share a single read, and therefore also the same {@link Chunk} instance.
+	 * Pending {@link #saveChunkAsync(int, int, Chunk, Executor) saves} of the chunk are completed first
+	 * 
+	 * @param x chunk's X position ({@code 0 >= x < 32})
+	 * @param z chunk's Z position ({@code 0 >= z < 32})
+	 * @param executor the executor to read the chunk on
+	 * @return the chunk
+	 */
+	public CompletableFuture<Chunk> loadChunkAsync(int x, int z, @NonNull Executor executor) {
+		return async.load(RegionUtil.index(x, z), () -> readChunk(x, z), executor);
+	}
+	
+	/**
+	 * Reads the serialized data of a specific chunk, consisting of the compression scheme
+	 * followed by the compressed data. A value of {@code null} suggest that the chunk has not been generated yet.
+	 * 
+	 * @param x chunk's X position ({@code 0 >= x < 32})
+	 * @param z chunk's Z position ({@code 0 >= z < 32})
+	 * @return the serialized data
+	 * @throws IOException if an I/O error occured
+	 */
+	public ByteBuffer readChunkData(int x, int z) throws IOException {
+		int index = RegionUtil.index(x, z);
+		Lock lock = readLock(index);
+		
+		lock.lock();
+		
+		try {
+			ByteBuffer data = readRecord(index);
+			
+			if(data != null && RegionUtil.isExternal(data.get(data.position())))
+				return ByteBuffer.wrap(RegionUtil.readExternal(path, x, z, data.get(data.position())));
+			
+			return data;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	// reads the chunk data as stored in the region file, without resolving external chunks.
+	// the caller has to hold the lock of the chunk slot
+	private ByteBuffer readRecord(int index) throws IOException {
+		int location = locations[index];
+		
+		if(location == 0)
+			return null;
+		
+		int offset = RegionUtil.offset(location);
+		
+		if(offset < 2)
+			throw new NBTException("Invalid chunk location");
+		
+		long position = offset * (long) RegionUtil.SECTOR_SIZE;
+		
+		if(mapped) {
+			if(position + 4 > mapping.capacity())
+				throw new EOFException("Unexpected end of region file");
+			
+			int length = RegionUtil.checkLength(location, mapping.getInt((int) position));
+			
+			if(position + 4 + length > mapping.capacity())
+				throw new EOFException("Unexpected end of region file");
+			
+			return mapping.slice((int) position + 4, length);
+		}
+		
+		ByteBuffer length = ByteBuffer.allocate(4);
+		
+		read(length, position);
+		
+		ByteBuffer data = ByteBuffer.allocate(RegionUtil.checkLength(location, length.getInt(0)));
+		
+		read(data, position + 4);
+		
+		return data.flip();
+	}
+	
+	/**
+	 * Reads all chunks within the region file
+	 * 
+	 * @return the region
+	 * @throws IOException if an I/O error occured
+	 */
+	public Region readRegion() throws IOException {
+		return readRegion(false);
+	}
+	
+	/**
+	 * Reads all chunks within the region file, in the order they are stored in
+	 * 
+	 * @param lazy whether chunks should only be decoded upon first access (see {@link #readChunkLazy(int, int)})
+	 * @return the region
+	 * @throws IOException if an I/O error occured
+	 */
+	public Region readRegion(boolean lazy) throws IOException {
+		Region region = new Region();
+		
+		int[] locations = new int[1024];
+		int[] timestamps = new int[1024];
+		
+		snapshot(locations, timestamps);
+		
+		for(int index = 0; index < 1024; ++index)
+			region.setTimestamp(index & 31, index >> 5, timestamps[index]);
+		
+		// chunks are read in the order they are stored in, so the file is read front to back
+		for(int index : RegionUtil.offsetOrder(locations)) {
+			int x = index & 31;
+			int z = index >> 5;
+			
+			region.setChunk(x, z, lazy ? readChunkLazy(x, z) : readChunk(x, z));
+		}
+		
+		return region;
+	}
+	
+	/**
+	 * Reads all chunks within the region file. The chunks are read sequentially,
+	 * but decompressed and deserialized on multiple threads
+	 * 
+	 * @param executor the executor to decode the chunks on
+	 * @return the region
+	 * @throws IOException if an I/O error occured
+	 * @see Region#decodeChunks(Executor)
+	 */
+	public Region readRegion(@NonNull Executor executor) throws IOException {
+		return readRegion(true).decodeChunks(executor);
+	}
+	
+	/**
+	 * Writes a specific chunk, using {@link NBTCompression#ZLIB} unless the chunk
+	 * defines its own compression scheme. The timestamp is set to the current time
+	 * 
+	 * @param x chunk's X position ({@code 0 >= x < 32})
+	 * @param z chunk's Z position ({@code 0 >= z < 32})
+	 * @param chunk the chunk
+	 * @throws IOException if an I/O error occured
+	 */
+	public void writeChunk(int x, int z, @NonNull Chunk chunk) throws IOException {
+		writeChunkData(x, z, chunk.serialize(NBTCompression.ZLIB), (int) (System.currentTimeMillis() / 1000));
+	}
+	
+	/**
+	 * Writes a specific chunk asynchronously (see {@link #writeChunk(int, int, Chunk)}) on the
+	 * {@link AsyncChunkIO#defaultExecutor() default executor}, which uses virtual threads if available (otherwise a bounded thread pool)
+	 * 
+	 * @param x chunk's X position ({@code 0 >= x < 32})
+	 * @param z chunk's Z position ({@code 0 >= z < 32})
+	 * @param chunk the chunk
+	 * @return a future completed once the chunk is written
+	 */
+	public CompletableFuture<Void> saveChunkAsync(int x, int z, @NonNull Chunk chunk) {
+		return saveChunkAsync(x, z, chunk, AsyncChunkIO.defaultExecutor());
+	}
+	
+	/**
+	 * Writes a specific chunk asynchronously (see {@link #writeChunk(int, int, Chunk)}). Saves of the same
+	 * chunk are performed in the order they were requested. The chunk must not be modified until the returned
+	 * future is complete
+	 * 
+	 * @param x chunk's X position ({@code 0 >= x < 32})
+	 * @param z chunk's Z position ({@code 0 >= z < 32})
+	 * @param chunk the chunk
+	 * @param executor the executor to write the chunk on
+	 * @return a future completed once the chunk is written
+	 */
+	public CompletableFuture<Void> saveChunkAsync(int x, int z, @NonNull Chunk chunk, @NonNull Executor executor) {
+		return async.save(RegionUtil.index(x, z), () -> {
+			writeChunk(x, z, chunk);
+			return null;
+		}, executor);
+	}
+	
+	/**
+	 * Writes the serialized data of a specific chunk, consisting of the compression scheme
+	 * followed by the compressed data. The chunk is written to the first run of free sectors that
+	 * is large enough, and the location and timestamp table is updated after the data has been written.
+	 * The sectors previously occupied by the chunk are only reused after the table has been updated.
+	 * Only writes to the same chunk slot (or slots sharing the same lock) block each other
+	 * 
+	 * @param x chunk's X position ({@code 0 >= x < 32})
+	 * @param z chunk's Z position ({@code 0 >= z < 32})
+	 * @param data the serialized data
+	 * @param timestamp the new timestamp
+	 * @throws IOException if an I/O error occured
+	 */
+	public void writeChunkData(int x, int z, @NonNull byte[] data, int timestamp) throws IOException {
+		checkWritable();
+		
+		int index = RegionUtil.index(x, z);
+		Lock lock = writeLock(index);
+		
+		lock.lock();
+		
+		try {
+			int size = RegionUtil.sectors(data.length);
+			
+			// chunks which are too big are stored in a separate file
+			boolean external = size != (size & 0xFF);
+			
+			if(external) {
+				data = RegionUtil.writeExternal(path, x, z, data);
+				size = RegionUtil.sectors(data.length);
+			}
+			
+			int location = locations[index];
+			int oldOffset = RegionUtil.offset(location);
+			int oldSize = RegionUtil.sectorCount(location);
+			
+			// never overwrite the old data, it stays intact until the header is updated
+			int offset = allocate(size);
+			
+			ByteBuffer record = ByteBuffer.allocate(size * RegionUtil.SECTOR_SIZE);
+			record.putInt(data.length).put(data).clear();
+			
+			try {
+				write(record, offset * (long) RegionUtil.SECTOR_SIZE);
+				
+				writeHeader(index, (offset << 8) | size, timestamp);
+			} catch (IOException | RuntimeException e) {
+				// if only the timestamp could not be written, the header already points to the new sectors
+				if(locations[index] == location)
+					free(offset, size);
+				
+				else if(location != 0)
+					free(oldOffset, oldSize);
+				
+				throw e;
+			}
+			
+			if(location != 0)
+				free(oldOffset, oldSize);
+			
+			// the external file of the previous chunk is only deleted once the header no longer refers to it
+			if(!external)
+				RegionUtil.deleteExternal(path, x, z);
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Removes a specific chunk from the region file. The sectors occupied
+	 * by the chunk are reused by subsequent writes
+	 * 
+	 * @param x chunk's X position ({@code 0 >= x < 32})
+	 * @param z chunk's Z position ({@code 0 >= z < 32})
+	 * @throws IOException if an I/O error occured
+	 */
+	public void deleteChunk(int x, int z) throws IOException {
+		checkWritable();
+		
+		int index = RegionUtil.index(x, z);
+		Lock lock = writeLock(index);
+		
+		lock.lock();
+		
+		try {
+			int location = locations[index];
+			
+			if(location == 0)
+				return;
+			
+			writeHeader(index, 0, 0);
+			
+			RegionUtil.deleteExternal(path, x, z);
+			
+			free(RegionUtil.offset(location), RegionUtil.sectorCount(location));
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Writes all modified chunks of the region into the region file. Chunks are written if they are
+	 * {@link Chunk#isDirty() dirty} or not present in the region file yet, and are marked as not dirty
+	 * afterwards. Chunks which are present in the file but not in the region are removed.
+	 * All other chunks are left untouched, apart from their timestamps.
+	 * Each chunk is written atomically, but other threads may observe a partially saved region
+	 * 
+	 * @param region the region
+	 * @throws IOException if an I/O error occured
+	 */
+	public void saveRegion(@NonNull Region region) throws IOException {
+		checkWritable();
+		
+		CompressionSelector selector = region.getCompressionPolicy() == null
+			? null
+			: RegionUtil.sampleCompression(region);
+		
+		for(int z = 0; z < 32; ++z)
+			for(int x = 0; x < 32; ++x) {
+				Chunk chunk = region.getChunk(x, z);
+				int timestamp = region.getTimestamp(x, z);
+				
+				if(chunk == null)
+					deleteChunk(x, z);
+				
+				else if(chunk.isDirty() || !hasChunk(x, z)) {
+					writeChunkData(x, z, RegionUtil.serializeChunk(region, chunk, selector), timestamp);
+					chunk.setDirty(false);
+				}
+				
+				else updateTimestamp(RegionUtil.index(x, z), timestamp);
+			}
+	}
+	
+	/**
+	 * Writes a compacted copy of the region file, with all chunks packed
+	 * without any gaps and sorted by their position (in the same order as the location table).
+	 * The chunks are copied as-is, without decompressing them. Any existing file is overwritten.
+	 * Chunks written concurrently are copied either in their old or their new state
+	 * 
+	 * @param target the path of the compacted region file
+	 * @return the number of bytes reclaimed
+	 * @throws IOException if an I/O error occured
+	 * @throws NBTException if the target is the region file itself (see {@link #compact()})
+	 */
+	public long compactTo(@NonNull Path target) throws IOException {
+		if(Files.exists(target) && Files.isSameFile(target, path))
+			throw new NBTException("Cannot compact a region file into itself (use compact() instead)");
+		
+		try(FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			
+			ByteBuffer header = ByteBuffer.allocate(RegionUtil.HEADER_SIZE);
+			
+			int offset = 2;
+			
+			Path targetDirectory = target.toAbsolutePath().getParent();
+			
+			boolean copyExternal = !targetDirectory.equals(path.toAbsolutePath().getParent());
+			
+			for(int index = 0; index < 1024; ++index) {
+				Lock lock = readLock(index);
+				
+				ByteBuffer data;
+				int timestamp;
+				
+				lock.lock();
+				
+				try {
+					data = readRecord(index);
+					timestamp = timestamps[index];
+				} finally {
+					lock.unlock();
+				}
+				
+				if(data == null)
+					continue;
+				
+				// external chunks are kept as-is, but need to be copied if the target is in a different directory
+				if(copyExternal && RegionUtil.isExternal(data.get(data.position()))) {
+					Path external = RegionUtil.externalFile(path, index & 31, index >> 5);
+					
+					Files.copy(external, targetDirectory.resolve(external.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+				}
+				
+				int size = RegionUtil.sectors(data.remaining());
+				
+				header.putInt(index * 4, (offset << 8) | size);
+				header.putInt(RegionUtil.SECTOR_SIZE + index * 4, timestamp);
+				
+				ByteBuffer record = ByteBuffer.allocate(size * RegionUtil.SECTOR_SIZE);
+				record.putInt(data.remaining()).put(data).clear();
+				
+				long position = offset * (long) RegionUtil.SECTOR_SIZE;
+				
+				while(record.hasRemaining())
+					position += out.write(record, position);
+				
+				offset += size;
+			}
+			
+			long position = 0;
+			
+			while(header.hasRemaining())
+				position += out.write(header, position);
+			
+			return channel.size() - out.size();
+		}
+	}
+	
+	/**
+	 * Compacts the region file in place (see {@link #compactTo(Path)}). The compacted
+	 * copy is written to a temporary file first, which then replaces the region file.
+	 * All other operations on this region file are blocked in the meantime
+	 * 
+	 * @return the number of bytes reclaimed
+	 * @throws IOException if an I/O error occured
+	 */
+	public long compact() throws IOException {
+		checkWritable();
+		
+		for(ReadWriteLock lock : locks)
+			lock.writeLock().lock();
+		
+		try {
+			Path temp = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+			
+			long reclaimed;
+			
+			try {
+				reclaimed = compactTo(temp);
+				
+				channel.close();
+				
+				RegionUtil.replace(temp, path);
+			} finally {
+				Files.deleteIfExists(temp);
+				
+				if(!channel.isOpen())
+					channel = open();
+			}
+			
+			readHeader();
+			
+			return reclaimed;
+		} finally {
+			for(ReadWriteLock lock : locks)
+				lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Copies a chunk into another (or the same) region file, without decompressing it. The chunk keeps its timestamp.
+	 * If the chunk does not exist, the target chunk is left untouched.
+	 * <p>
+	 * If {@code relocate} is {@code true}, the position stored within the chunk is changed to match its new
+	 * position (see {@link RegionUtil#relocateChunk(byte[], int, int)}), which requires the target region file to be
+	 * named {@code r.<x>.<z>.mca}. In this case, the chunk is decompressed and compressed again, but still not deserialized
+	 * 
+	 * @param x chunk's X position ({@code 0 >= x < 32})
+	 * @param z chunk's Z position ({@code 0 >= z < 32})
+	 * @param target the target region file
+	 * @param targetX chunk's new X position ({@code 0 >= x < 32})
+	 * @param targetZ chunk's new Z position ({@code 0 >= z < 32})
+	 * @param relocate whether the position stored within the chunk should be changed
+	 * @return whether the chunk exists
+	 * @throws IOException if an I/O error occured
+	 */
+	public boolean copyChunk(int x, int z, @NonNull RegionFile target, int targetX, int targetZ, boolean relocate) throws IOException {
+		int[] position = null;
+		
+		if(relocate && (position = RegionUtil.regionPosition(target.path)) == null)
+			throw new NBTException("Cannot determine the position of " + target.path + " (region file must be named r.<x>.<z>.mca)");
+		
+		int index = RegionUtil.index(x, z);
+		Lock lock = readLock(index);
+		
+		ByteBuffer record;
+		int timestamp;
+		
+		lock.lock();
+		
+		try {
+			record = readChunkData(x, z);
+			timestamp = timestamps[index];
+		} finally {
+			lock.unlock();
+		}
+		
+		if(record == null)
+			return false;
+		
+		byte[] data = new byte[record.remaining()];
+		record.get(data);
+		
+		if(relocate)
+			data = RegionUtil.relocateChunk(data, position[0] * 32 + targetX, position[1] * 32 + targetZ);
+		
+		target.writeChunkData(targetX, targetZ, data, timestamp);
+		
+		return true;
+	}
+	
+	/**
+	 * Copies all chunks into the same slots of another region file (see {@link #copyChunk(int, int, RegionFile, int, int, boolean)}),
+	 * replacing existing chunks. Chunks which are only present in the target region file are kept.
+	 * <p>
+	 * In order to move a region to another position, copy it into the region file for the new position
+	 * (e.g. {@code r.3.-1.mca}) and set {@code relocate} to {@code true}. Otherwise, the chunks are copied without
+	 * decompressing them, so that only their sectors and the header are written
+	 * 
+	 * @param target the target region file
+	 * @param relocate whether the positions stored within the chunks should be changed
+	 * @return the number of chunks copied
+	 * @throws IOException if an I/O error occured
+	 */
+	public int copyTo(@NonNull RegionFile target, boolean relocate) throws IOException {
+		int count = 0;
+		
+		for(int z = 0; z < 32; ++z)
+			for(int x = 0; x < 32; ++x)
+				if(copyChunk(x, z, target, x, z, relocate))
+					++count;
+		
+		return count;
+	}
+	
+	/**
+	 * Copies all chunks of another region file which are not present in this region file yet,
+	 * without decompressing them (e.g. for merging the same region of two worlds).
+	 * Chunks already present in this region file are left untouched
+	 * 
+	 * @param source the source region file
+	 * @return the number of chunks copied
+	 * @throws IOException if an I/O error occured
+	 */
+	public int mergeFrom(@NonNull RegionFile source) throws IOException {
+		checkWritable();
+		
+		int count = 0;
+		
+		for(int z = 0; z < 32; ++z)
+			for(int x = 0; x < 32; ++x)
+				if(!hasChunk(x, z) && source.copyChunk(x, z, this, x, z, false))
+					++count;
+		
+		return count;
+	}
+	
+	/**
+	 * Removes all chunks outside of the given bounding box (see {@link #deleteChunk(int, int)}).
+	 * Only the header is rewritten; the sectors of the removed chunks are reused by subsequent writes
+	 * or reclaimed by {@link #compact()}
+	 * 
+	 * @param minX the minimum X position ({@code 0 >= x < 32}, inclusive)
+	 * @param minZ the minimum Z position ({@code 0 >= z < 32}, inclusive)
+	 * @param maxX the maximum X position ({@code 0 >= x < 32}, inclusive)
+	 * @param maxZ the maximum Z position ({@code 0 >= z < 32}, inclusive)
+	 * @return the number of chunks removed
+	 * @throws IOException if an I/O error occured
+	 */
+	public int crop(int minX, int minZ, int maxX, int maxZ) throws IOException {
+		checkWritable();
+		
+		int count = 0;
+		
+		for(int z = 0; z < 32; ++z)
+			for(int x = 0; x < 32; ++x)
+				if((x < minX || x > maxX || z < minZ || z > maxZ) && hasChunk(x, z)) {
+					deleteChunk(x, z);
+					++count;
+				}
+		
+		return count;
+	}
+	
+	/**
+	 * Forces all changes made to the region file to be written to the storage device
+	 * (see {@link FileChannel#force(boolean)}). Chunks written concurrently may or may not be included
+	 * 
+	 * @throws IOException if an I/O error occured
+	 */
+	public void force() throws IOException {
+		checkWritable();
+		
+		channel.force(true);
+	}
+	
+	private void checkWritable() {
+		if(!writable)
+			throw new NBTException("Region file is not writable");
+	}
+	
+	// finds and reserves the first run of free sectors that is large enough
+	private int allocate(int size) {
+		synchronized(used) {
+			int offset = used.nextClearBit(2);
+			
+			while(true) {
+				int end = used.nextSetBit(offset);
+				
+				// the sectors after the last chunk are always free
+				if(end == -1 || end - offset >= size) {
+					used.set(offset, offset + size);
+					return offset;
+				}
+				
+				offset = used.nextClearBit(end);
+			}
+		}
+	}
+	
+	private void free(int offset, int size) {
+		synchronized(used) {
+			used.clear(offset, offset + size);
+		}
+	}
+	
+	private void updateTimestamp(int index, int timestamp) throws IOException {
+		Lock lock = writeLock(index);
+		
+		lock.lock();
+		
+		try {
+			if(locations[index] != 0)
+				writeHeader(index, locations[index], timestamp);
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	// the caller has to hold the write lock of the chunk slot
+	private void writeHeader(int index, int location, int timestamp) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(4);
+		
+		if(locations[index] != location) {
+			write(buf.putInt(0, location), index * 4L);
+			locations[index] = location;
+		}
+		
+		if(timestamps[index] != timestamp) {
+			write(buf.clear().putInt(0, timestamp), RegionUtil.SECTOR_SIZE + index * 4L);
+			timestamps[index] = timestamp;
+		}
+	}
+	
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+	
+}
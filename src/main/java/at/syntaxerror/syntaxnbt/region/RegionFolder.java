@@ -0,0 +1,54 @@
+/* MIT License
+ * 
+ * Copyright (c) 2022 SyntaxError404
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package at.syntaxerror.syntaxnbt.region;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * The folders within a world directory containing region files
+ * 
+ * @author SyntaxError404
+ * 
+ */
+@Getter
+@RequiredArgsConstructor
+public enum RegionFolder {
+
+	/** the {@code region} folder, containing the terrain */
+	REGION("region"),
+	
+	/** the {@code entities} folder, containing the entities */
+	ENTITIES("entities"),
+	
+	/** the {@code poi} folder, containing the points of interest */
+	POI("poi");
+	
+	/**
+	 * Returns the name of the folder
+	 * 
+	 * @return the name of the folder
+	 */
+	private final String folderName;
+	
+}
@@ -0,0 +1,172 @@
+/* MIT License
+ * 
+ * Copyright (c) 2022 SyntaxError404
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package at.syntaxerror.syntaxnbt.region;
+
+import java.nio.file.Path;
+
+import at.syntaxerror.syntaxnbt.internal.RegionUtil;
+import lombok.Getter;
+
+/**
+ * A summary of a region file, obtained solely from its location and timestamp table
+ * (without reading any chunk data). It contains which chunks are present, the number of
+ * sectors allocated for each chunk, and their timestamps
+ * 
+ * @author SyntaxError404
+ * 
+ */
+public class RegionSummary {
+
+	/**
+	 * Returns the path of the region file
+	 * 
+	 * @return the path
+	 */
+	@Getter
+	private final Path path;
+	
+	private final long[] present;
+	private final byte[] sectorCounts;
+	private final int[] timestamps;
+	
+	/**
+	 * Returns the number of chunks present within the region file
+	 * 
+	 * @return the number of chunks
+	 */
+	@Getter
+	private final int chunkCount;
+	
+	/**
+	 * Returns the total number of sectors allocated for chunks (excluding the header)
+	 * 
+	 * @return the number of sectors
+	 */
+	@Getter
+	private final int sectorCount;
+	
+	/**
+	 * Returns the highest offset (in sectors) of any chunk's end, i.e. the minimum
+	 * number of sectors the region file occupies (including the header)
+	 * 
+	 * @return the end of the last chunk
+	 */
+	@Getter
+	private final int usedSectors;
+	
+	/**
+	 * Returns the most recent timestamp of any chunk
+	 * 
+	 * @return the most recent timestamp, or {@code 0} if no chunks are present
+	 */
+	@Getter
+	private final int latestTimestamp;
+	
+	/**
+	 * Constructs a new summary from a location and timestamp table
+	 * 
+	 * @param path the path of the region file
+	 * @param locations the location table
+	 * @param timestamps the timestamp table
+	 * @deprecated internal use only
+	 */
+	@Deprecated
+	public RegionSummary(Path path, int[] locations, int[] timestamps) {
+		this.path = path;
+		
+		present = new long[16];
+		sectorCounts = new byte[1024];
+		this.timestamps = new int[1024];
+		
+		int chunks = 0;
+		int sectors = 0;
+		int end = 2;
+		int latest = 0;
+		
+		for(int i = 0; i < 1024; ++i) {
+			int location = locations[i];
+			
+			if(location == 0)
+				continue;
+			
+			present[i >> 6] |= 1L << i;
+			sectorCounts[i] = (byte) RegionUtil.sectorCount(location);
+			this.timestamps[i] = timestamps[i];
+			
+			++chunks;
+			sectors += RegionUtil.sectorCount(location);
+			end = Math.max(end, RegionUtil.offset(location) + RegionUtil.sectorCount(location));
+			latest = Math.max(latest, timestamps[i]);
+		}
+		
+		chunkCount = chunks;
+		sectorCount = sectors;
+		usedSectors = end;
+		latestTimestamp = latest;
+	}
+	
+	/**
+	 * Checks whether a specific chunk is present in the region file
+	 * 
+	 * @param x chunk's X position ({@code 0 >= x < 32})
+	 * @param z chunk's Z position ({@code 0 >= z < 32})
+	 * @return whether the chunk is present
+	 */
+	public boolean isPresent(int x, int z) {
+		int index = RegionUtil.index(x, z);
+		return (present[index >> 6] & (1L << index)) != 0;
+	}
+	
+	/**
+	 * Returns the number of sectors allocated for a specific chunk
+	 * 
+	 * @param x chunk's X position ({@code 0 >= x < 32})
+	 * @param z chunk's Z position ({@code 0 >= z < 32})
+	 * @return the number of sectors, or {@code 0} if the chunk is not present
+	 */
+	public int getSectorCount(int x, int z) {
+		return sectorCounts[RegionUtil.index(x, z)] & 0xFF;
+	}
+	
+	/**
+	 * Returns the timestamp for a specific chunk
+	 * 
+	 * @param x chunk's X position ({@code 0 >= x < 32})
+	 * @param z chunk's Z position ({@code 0 >= z < 32})
+	 * @return the timestamp, or {@code 0} if the chunk is not present
+	 */
+	public int getTimestamp(int x, int z) {
+		return timestamps[RegionUtil.index(x, z)];
+	}
+	
+	/**
+	 * Returns the bitmap of present chunks. Bit {@code i % 64} of element {@code i / 64}
+	 * is set if the chunk with index {@code i = x + z * 32} is present
+	 * 
+	 * @return the bitmap
+	 */
+	public long[] getPresenceBitmap() {
+		return present.clone();
+	}
+	
+}
@@ -0,0 +1,107 @@
+/* MIT License
+ * 
+ * Copyright (c) 2022 SyntaxError404
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package at.syntaxerror.syntaxnbt.region;
+
+import lombok.Getter;
+
+/**
+ * A chunk within a world, along with its position
+ * 
+ * @author SyntaxError404
+ * 
+ */
+@Getter
+public class WorldChunk {
+
+	/**
+	 * Returns the folder containing the chunk's region file
+	 * 
+	 * @return the folder
+	 */
+	private final RegionFolder folder;
+	
+	/**
+	 * Returns the region's X position
+	 * 
+	 * @return the region's X position
+	 */
+	private final int regionX;
+	
+	/**
+	 * Returns the region's Z position
+	 * 
+	 * @return the region's Z position
+	 */
+	private final int regionZ;
+	
+	/**
+	 * Returns the chunk's absolute X position
+	 * 
+	 * @return the chunk's X position
+	 */
+	private final int chunkX;
+	
+	/**
+	 * Returns the chunk's absolute Z position
+	 * 
+	 * @return the chunk's Z position
+	 */
+	private final int chunkZ;
+	
+	/**
+	 * Returns the chunk's timestamp
+	 * 
+	 * @return the timestamp
+	 */
+	private final int timestamp;
+	
+	/**
+	 * Returns the chunk. The chunk is only decoded once {@link Chunk#getData()} is called
+	 * 
+	 * @return the chunk
+	 */
+	private final Chunk chunk;
+	
+	/**
+	 * Constructs a new world chunk
+	 * 
+	 * @param folder the folder containing the chunk's region file
+	 * @param regionX the region's X position
+	 * @param regionZ the region's Z position
+	 * @param index the chunk's index within the region
+	 * @param timestamp the chunk's timestamp
+	 * @param chunk the chunk
+	 * @deprecated internal use only
+	 */
+	@Deprecated
+	public WorldChunk(RegionFolder folder, int regionX, int regionZ, int index, int timestamp, Chunk chunk) {
+		this.folder = folder;
+		this.regionX = regionX;
+		this.regionZ = regionZ;
+		this.chunkX = regionX * 32 + (index & 31);
+		this.chunkZ = regionZ * 32 + (index >> 5);
+		this.timestamp = timestamp;
+		this.chunk = chunk;
+	}
+	
+}
@@ -0,0 +1,488 @@
+/* MIT License
+ * 
+ * Copyright (c) 2022 SyntaxError404
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package at.syntaxerror.syntaxnbt.region;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import at.syntaxerror.syntaxnbt.NBTCompression;
+import at.syntaxerror.syntaxnbt.NBTException;
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * A write-behind layer on top of a {@link RegionCache}.
+ * <p>
+ * Saved chunks are serialized immediately, but only written to their region files later on a background thread.
+ * Repeated saves of the same chunk are coalesced, so only the latest version is written.
+ * Pending chunks are written in batches, grouped by region file, with a single {@link RegionFile#force()} per
+ * region file and batch. A batch is written once the oldest pending chunk has been waiting for
+ * {@link #getMaxDelay() maxDelay} milliseconds, or once the pending chunks occupy more than {@link #getMaxDirtyBytes() maxDirtyBytes}.
+ * In the latter case, saving further chunks blocks until enough chunks have been written.
+ * <p>
+ * Errors occuring on the background thread are reported by the next call to {@link #save(int, int, Chunk)},
+ * {@link #flush()}, or {@link #close()}. Chunks which could not be written are kept pending.
+ * 
+ * @author SyntaxError404
+ * 
+ */
+public class WriteBehindSaver implements Closeable {
+
+	/**
+	 * Returns the region cache the chunks are written to
+	 * 
+	 * @return the region cache
+	 */
+	@Getter
+	private final RegionCache cache;
+	
+	/**
+	 * Returns the maximum time (in milliseconds) a chunk stays pending before it is written
+	 * 
+	 * @return the maximum delay
+	 */
+	@Getter
+	private final long maxDelay;
+	
+	/**
+	 * Returns the maximum number of bytes occupied by pending chunks
+	 * 
+	 * @return the maximum number of dirty bytes
+	 */
+	@Getter
+	private final long maxDirtyBytes;
+	
+	private final Thread thread;
+	
+	// held while writing a batch, so batches are written in order
+	private final Object writeLock = new Object();
+	
+	private final Lock lock = new ReentrantLock();
+	
+	// signalled when the background thread may have to write a batch
+	private final Condition workAvailable = lock.newCondition();
+	
+	// signalled when dirty bytes are released, or when waiting savers have to fail
+	private final Condition spaceFreed = lock.newCondition();
+	
+	// all fields below are guarded by lock
+	
+	private Map<Long, Pending> pending = new HashMap<>();
+	
+	// the batch currently being written
+	private Map<Long, Pending> writing = Map.of();
+	
+	// number of bytes of the pending chunks and the chunks currently being written
+	private long dirtyBytes;
+	private long pendingBytes;
+	
+	// System.nanoTime() when the first currently pending chunk was saved
+	private long oldest;
+	
+	private IOException error;
+	
+	// whether a thread is waiting for pending chunks to be written
+	private boolean urgent;
+	
+	private boolean closed;
+	
+	/**
+	 * Constructs a new write-behind saver and starts its background thread
+	 * 
+	 * @param cache the writable region cache
+	 * @param maxDelay the maximum time (in milliseconds) a chunk stays pending before it is written
+	 * @param maxDirtyBytes the maximum number of bytes occupied by pending chunks
+	 */
+	public WriteBehindSaver(@NonNull RegionCache cache, long maxDelay, long maxDirtyBytes) {
+		if(!cache.isWritable())
+			throw new NBTException("Region cache is not writable");
+		
+		if(maxDelay < 0)
+			throw new NBTException("Maximum delay must not be negative");
+		
+		if(maxDirtyBytes < 1)
+			throw new NBTException("Maximum dirty bytes must be positive");
+		
+		this.cache = cache;
+		this.maxDelay = maxDelay;
+		this.maxDirtyBytes = maxDirtyBytes;
+		
+		thread = new Thread(this::run, "SyntaxNBT-WriteBehind");
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	/**
+	 * Schedules a chunk to be saved. The chunk is serialized immediately (using {@link NBTCompression#ZLIB}
+	 * unless the chunk defines its own compression scheme), so it can be modified again right away.
+	 * If a previous version of the chunk is still pending, it is replaced.
+	 * The timestamp is set to the current time
+	 * 
+	 * @param chunkX the chunk's absolute X position
+	 * @param chunkZ the chunk's absolute Z position
+	 * @param chunk the chunk
+	 * @throws IOException if a previous write failed, or if interrupted while waiting for pending chunks to be written
+	 */
+	@SuppressWarnings("deprecation")
+	public void save(int chunkX, int chunkZ, @NonNull Chunk chunk) throws IOException {
+		Pending entry = new Pending(chunkX, chunkZ, chunk.serialize(NBTCompression.ZLIB), (int) (System.currentTimeMillis() / 1000));
+		
+		lock.lock();
+		
+		try {
+			checkOpen();
+			checkError();
+			
+			// wait for pending chunks to be written if the limit would be exceeded
+			while(dirtyBytes > 0 && dirtyBytes + entry.data.length > maxDirtyBytes) {
+				// only the first waiting saver wakes up the background thread
+				if(!urgent) {
+					urgent = true;
+					workAvailable.signal();
+				}
+				
+				try {
+					spaceFreed.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while waiting for pending chunks to be written");
+				}
+				
+				checkOpen();
+				checkError();
+			}
+			
+			boolean first = pending.isEmpty();
+			
+			if(first)
+				oldest = System.nanoTime();
+			
+			Pending previous = pending.put(key(chunkX, chunkZ), entry);
+			
+			if(previous != null)
+				release(previous.data.length, true);
+			
+			dirtyBytes += entry.data.length;
+			pendingBytes += entry.data.length;
+			
+			if(first || pendingBytes >= maxDirtyBytes)
+				workAvailable.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Reads a specific chunk. If the chunk is pending, the pending version is returned
+	 * instead of the one stored in the region file
+	 * 
+	 * @param chunkX the chunk's absolute X position
+	 * @param chunkZ the chunk's absolute Z position
+	 * @return the chunk
+	 * @throws IOException if an I/O error occured
+	 * @see RegionCache#readChunk(int, int)
+	 */
+	public Chunk readChunk(int chunkX, int chunkZ) throws IOException {
+		Pending entry;
+		
+		lock.lock();
+		
+		try {
+			Long key = key(chunkX, chunkZ);
+			
+			entry = pending.get(key);
+			
+			if(entry == null)
+				entry = writing.get(key);
+		} finally {
+			lock.unlock();
+		}
+		
+		if(entry != null)
+			return new Chunk(entry.data);
+		
+		return cache.readChunk(chunkX, chunkZ);
+	}
+	
+	/**
+	 * Returns the number of pending chunks
+	 * 
+	 * @return the number of pending chunks
+	 */
+	public int getPendingCount() {
+		lock.lock();
+		
+		try {
+			return pending.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Returns the number of bytes occupied by pending chunks and chunks currently being written
+	 * 
+	 * @return the number of dirty bytes
+	 */
+	public long getDirtyBytes() {
+		lock.lock();
+		
+		try {
+			return dirtyBytes;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Writes all pending chunks on the calling thread
+	 * 
+	 * @throws IOException if an I/O error occured
+	 */
+	public void flush() throws IOException {
+		checkErrorLocked();
+		
+		writeBatch();
+		
+		checkErrorLocked();
+	}
+	
+	private void run() {
+		while(true) {
+			lock.lock();
+			
+			try {
+				while(true) {
+					if(pending.isEmpty()) {
+						if(closed)
+							return;
+						
+						workAvailable.await();
+						continue;
+					}
+					
+					long remaining = maxDelay - (System.nanoTime() - oldest) / 1_000_000;
+					
+					if(closed || urgent || remaining <= 0 || pendingBytes >= maxDirtyBytes)
+						break;
+					
+					workAvailable.await(remaining, TimeUnit.MILLISECONDS);
+				}
+			} catch (InterruptedException e) {
+				return;
+			} finally {
+				lock.unlock();
+			}
+			
+			writeBatch();
+			
+			lock.lock();
+			
+			try {
+				// do not retry failed writes immediately. once closed, close() retries them one last time
+				if(error != null) {
+					if(closed)
+						return;
+					
+					workAvailable.await(Math.max(1, maxDelay), TimeUnit.MILLISECONDS);
+				}
+			} catch (InterruptedException e) {
+				return;
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+	
+	private void writeBatch() {
+		synchronized(writeLock) {
+			Map<Long, Pending> batch;
+			
+			lock.lock();
+			
+			try {
+				if(pending.isEmpty())
+					return;
+				
+				batch = writing = pending;
+				pending = new HashMap<>();
+				pendingBytes = 0;
+				urgent = false;
+			} finally {
+				lock.unlock();
+			}
+			
+			Map<Long, List<Pending>> regions = new TreeMap<>();
+			
+			for(Pending entry : batch.values())
+				regions.computeIfAbsent(key(entry.chunkX >> 5, entry.chunkZ >> 5), k -> new ArrayList<>())
+					.add(entry);
+			
+			for(List<Pending> entries : regions.values()) {
+				Pending first = entries.get(0);
+				
+				long bytes = 0;
+				
+				for(Pending entry : entries)
+					bytes += entry.data.length;
+				
+				try {
+					cache.withRegion(first.chunkX >> 5, first.chunkZ >> 5, file -> {
+						for(Pending entry : entries)
+							file.writeChunkData(entry.chunkX & 31, entry.chunkZ & 31, entry.data, entry.timestamp);
+						
+						file.force();
+						return null;
+					});
+					
+					lock.lock();
+					
+					try {
+						release(bytes, false);
+					} finally {
+						lock.unlock();
+					}
+				} catch (IOException | RuntimeException e) {
+					lock.lock();
+					
+					try {
+						IOException cause = e instanceof IOException io ? io : new IOException(e);
+						
+						if(error == null)
+							error = cause;
+						else error.addSuppressed(cause);
+						
+						// keep the chunks pending, unless they have been saved again in the meantime
+						for(Pending entry : entries) {
+							if(pending.isEmpty())
+								oldest = System.nanoTime();
+							
+							if(pending.putIfAbsent(key(entry.chunkX, entry.chunkZ), entry) == null)
+								pendingBytes += entry.data.length;
+							
+							else release(entry.data.length, false);
+						}
+						
+						// waiting savers report the error
+						spaceFreed.signalAll();
+					} finally {
+						lock.unlock();
+					}
+				}
+			}
+			
+			lock.lock();
+			
+			try {
+				writing = Map.of();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+	
+	// the caller has to hold the lock
+	private void release(long bytes, boolean pending) {
+		dirtyBytes -= bytes;
+		
+		if(pending)
+			pendingBytes -= bytes;
+		
+		spaceFreed.signalAll();
+	}
+	
+	private void checkOpen() {
+		if(closed)
+			throw new NBTException("Write-behind saver is closed");
+	}
+	
+	private void checkErrorLocked() throws IOException {
+		lock.lock();
+		
+		try {
+			checkError();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	private void checkError() throws IOException {
+		IOException error = this.error;
+		
+		if(error != null) {
+			this.error = null;
+			throw error;
+		}
+	}
+	
+	private static long key(int x, int z) {
+		return ((long) x << 32) | (z & 0xFFFFFFFFL);
+	}
+	
+	/**
+	 * Writes all pending chunks and stops the background thread.
+	 * The region cache is <b>not</b> closed
+	 * 
+	 * @throws IOException if an I/O error occured
+	 */
+	@Override
+	public void close() throws IOException {
+		lock.lock();
+		
+		try {
+			if(closed)
+				return;
+			
+			closed = true;
+			workAvailable.signal();
+			spaceFreed.signalAll();
+		} finally {
+			lock.unlock();
+		}
+		
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for pending chunks to be written");
+		}
+		
+		// chunks kept pending after a failed write are written one last time
+		writeBatch();
+		
+		checkErrorLocked();
+	}
+	
+	private static record Pending(int chunkX, int chunkZ, byte[] data, int timestamp) { }
+	
+}
@@ -23,11 +23,12 @@
 package at.syntaxerror.syntaxnbt.tag;
 
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
 
 import at.syntaxerror.syntaxnbt.internal.SNBTStringifyer;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NonNull;
-import lombok.Setter;
 
 /**
  * An NBT Tag consisting of a type and a value
@@ -48,19 +49,22 @@ public abstract class Tag<T> {
 	private final TagType type;
 
 	/**
-	 * -- GETTER --
 	 * Returns the value stored in this tag
 	 * 
 	 * @return the value stored in this tag
-	 * 
-	 * -- SETTER --
-	 * Overrides the value stored in this tag
-	 * 
-	 * @param value value to be stored
 	 */
 	@NonNull
-	@Setter
 	private T value;
+	
+	// global modification clock, see checkpoint()
+	private static final AtomicLong CLOCK = new AtomicLong(1);
+	
+	@Getter(AccessLevel.NONE)
+	private long modified;
+	
+	// the compound or list containing this tag, see link(Tag)
+	@Getter(AccessLevel.NONE)
+	private Tag<?> parent;
 
 	/**
 	 * Constructs a new tag with a type and an initial value
@@ -71,6 +75,78 @@ public abstract class Tag<T> {
 	protected Tag(TagType type, T value) {
 		this.type = type;
 		this.value = value;
+		
+		modified();
+	}
+	
+	/**
+	 * Overrides the value stored in this tag
+	 * 
+	 * @param value value to be stored
+	 */
+	public void setValue(@NonNull T value) {
+		this.value = value;
+		modified();
+	}
+	
+	/**
+	 * Marks this tag as modified. Has to be called by every method modifying the value of this tag.
+	 * The modification is propagated to the compounds and lists containing this tag
+	 */
+	protected void modified() {
+		long now = CLOCK.get();
+		
+		// tags already marked at this time have already propagated the modification to their parents
+		for(Tag<?> tag = this; tag != null && tag.modified != now; tag = tag.parent)
+			tag.modified = now;
+	}
+	
+	/**
+	 * Marks a tag as being contained in this tag, so its modifications are propagated to this tag.
+	 * Has to be called by compounds and lists for every tag added to them
+	 * 
+	 * @param child the contained tag
+	 */
+	protected void link(Tag<?> child) {
+		child.parent = this;
+	}
+	
+	/**
+	 * Marks a tag as no longer being contained in this tag.
+	 * Has to be called by compounds and lists for every tag removed from them
+	 * 
+	 * @param child the removed tag, or {@code null}
+	 */
+	protected void unlink(Tag<?> child) {
+		if(child != null && child.parent == this)
+			child.parent = null;
+	}
+	
+	/**
+	 * Returns a new checkpoint. Any modification made to any tag after this method returns
+	 * is reported by {@link #isModifiedSince(long)} for this checkpoint.
+	 * 
+	 * @return the checkpoint
+	 */
+	public static long checkpoint() {
+		return CLOCK.getAndIncrement();
+	}
+	
+	/**
+	 * Checks whether this tag (or, for compounds and lists, any of its sub-tags) has been
+	 * modified since the checkpoint was {@link #checkpoint() taken}.
+	 * <p>
+	 * Modifications of sub-tags are propagated to their compound or list when they are made,
+	 * so this check does not need to visit the sub-tags. Only modifications made via the methods
+	 * of the tags are tracked. Changes made directly to the map, list, or array returned by {@link #getValue()}
+	 * (or views thereof) are not detected. A tag added to multiple compounds or lists only
+	 * propagates its modifications to the one it was added to last
+	 * 
+	 * @param checkpoint the checkpoint
+	 * @return whether this tag has been modified
+	 */
+	public boolean isModifiedSince(long checkpoint) {
+		return modified > checkpoint;
 	}
 	
 	/**
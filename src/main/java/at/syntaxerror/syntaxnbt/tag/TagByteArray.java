@@ -53,6 +53,7 @@ public class TagByteArray extends TagArray<Byte, byte[]> {
 	public TagByteArray set(int index, Number value) {
 		checkBounds(index);
 		Array.setByte(getValue(), index, value.byteValue());
+		modified();
 		return this;
 	}
 
@@ -52,6 +52,15 @@ public class TagCompound extends Tag<Map<String, Tag<?>>> {
 	 */
 	public TagCompound(Map<String, Tag<?>> tags) {
 		super(TagType.COMPOUND, new HashMap<>(tags));
+		
+		getValue().values().forEach(this::link);
+	}
+	
+	@Override
+	public void setValue(@NonNull Map<String, Tag<?>> value) {
+		getValue().values().forEach(this::unlink);
+		super.setValue(value);
+		value.values().forEach(this::link);
 	}
 	
 	/**
@@ -355,19 +364,23 @@ public class TagCompound extends Tag<Map<String, Tag<?>>> {
 		if(value.is(TagType.END))
 			throw new NBTException("Cannot add TAG_End to TAG_Compound");
 		
-		getValue().put(key, value);
+		unlink(getValue().put(key, value));
+		link(value);
+		modified();
 		return this;
 	}
 	
 	private <V, X extends Tag<V>> TagCompound put(String key, V value, Class<X> clazz) {
 		try {
-			getValue().put(key, (Tag<?>) TagType
+			Tag<?> tag = (Tag<?>) TagType
 				.getTypeFromClass(clazz)
 				.getTagClass()
 				.getConstructor(value.getClass())
-				.newInstance(value)
-			);
+				.newInstance(value);
 			
+			unlink(getValue().put(key, tag));
+			link(tag);
+			modified();
 			return this;
 		} catch(NBTException e) {
 			throw e;
@@ -377,7 +390,9 @@ public class TagCompound extends Tag<Map<String, Tag<?>>> {
 	}
 
 	private <X extends Tag<?>> TagCompound putTag(String key, X value) {
-		getValue().put(key, value);
+		unlink(getValue().put(key, value));
+		link(value);
+		modified();
 		return this;
 	}
 
@@ -630,7 +645,8 @@ public class TagCompound extends Tag<Map<String, Tag<?>>> {
 	 * @return this compound tag
 	 */
 	public TagCompound remove(@NonNull String key) {
-		getValue().remove(key);
+		unlink(getValue().remove(key));
+		modified();
 		return this;
 	}
 	
@@ -667,7 +683,9 @@ public class TagCompound extends Tag<Map<String, Tag<?>>> {
 	 * @return this compound tag
 	 */
 	public TagCompound clear() {
+		getValue().values().forEach(this::unlink);
 		getValue().clear();
+		modified();
 		return this;
 	}
 	
@@ -54,6 +54,7 @@ public class TagIntArray extends TagArray<Integer, int[]> {
 	public TagIntArray set(int index, Number value) {
 		checkBounds(index);
 		Array.setInt(getValue(), index, value.intValue());
+		modified();
 		return this;
 	}
 
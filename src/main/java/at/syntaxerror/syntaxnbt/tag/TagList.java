@@ -29,6 +29,7 @@ import java.util.List;
 
 import at.syntaxerror.syntaxnbt.NBTException;
 import lombok.Getter;
+import lombok.NonNull;
 
 /**
  * A list of <b>nameless</b> tags, all of the same type. The list is prefixed with the {@link TagType Type ID} of the items it contains
@@ -84,6 +85,8 @@ public class TagList<T extends Tag<?>> extends Tag<List<T>> implements Iterable<
 		
 		if(componentType == TagType.END)
 			throw new NBTException("Cannot create TAG_List for TAG_End");
+		
+		getValue().forEach(this::link);
 	}
 	
 	private TagList() {
@@ -92,6 +95,13 @@ public class TagList<T extends Tag<?>> extends Tag<List<T>> implements Iterable<
 		componentType = null;
 	}
 	
+	@Override
+	public void setValue(@NonNull List<T> value) {
+		getValue().forEach(this::unlink);
+		super.setValue(value);
+		value.forEach(this::link);
+	}
+	
 	private TagType check(Class<?> clazz) {
 		TagType type = TagType.getTypeFromClass(clazz);;
 		
@@ -614,12 +624,18 @@ public class TagList<T extends Tag<?>> extends Tag<List<T>> implements Iterable<
 	}
 	
 	private <V, X extends Tag<V>> TagList<T> add(int index, V value, Class<X> clazz) {
-		getValue().add(index, process(value, clazz));
+		T tag = process(value, clazz);
+		
+		getValue().add(index, tag);
+		link(tag);
+		modified();
 		return this;
 	}
 
 	private <X extends Tag<?>> TagList<T> addTag(int index, X value, Class<X> clazz) {
 		getValue().add(index, processTag(value, clazz));
+		link(value);
+		modified();
 		return this;
 	}
 
@@ -879,12 +895,18 @@ public class TagList<T extends Tag<?>> extends Tag<List<T>> implements Iterable<
 	}
 	
 	private <V, X extends Tag<V>> TagList<T> set(int index, V value, Class<X> clazz) {
-		getValue().set(index, process(value, clazz));
+		T tag = process(value, clazz);
+		
+		unlink(getValue().set(index, tag));
+		link(tag);
+		modified();
 		return this;
 	}
 
 	private <X extends Tag<?>> TagList<T> setTag(int index, X value, Class<X> clazz) {
-		getValue().set(index, processTag(value, clazz));
+		unlink(getValue().set(index, processTag(value, clazz)));
+		link(value);
+		modified();
 		return this;
 	}
 
@@ -1137,7 +1159,8 @@ public class TagList<T extends Tag<?>> extends Tag<List<T>> implements Iterable<
 	 * @return this list
 	 */
 	public TagList<T> remove(int index) {
-		getValue().remove(index);
+		unlink(getValue().remove(index));
+		modified();
 		return this;
 	}
 	
@@ -1147,7 +1170,9 @@ public class TagList<T extends Tag<?>> extends Tag<List<T>> implements Iterable<
 	 * @return this list
 	 */
 	public TagList<T> clear() {
+		getValue().forEach(this::unlink);
 		getValue().clear();
+		modified();
 		return this;
 	}
 	
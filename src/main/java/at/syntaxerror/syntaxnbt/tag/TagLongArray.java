@@ -25,6 +25,8 @@ package at.syntaxerror.syntaxnbt.tag;
 import java.lang.reflect.Array;
 import java.util.Arrays;
 
+import at.syntaxerror.syntaxnbt.internal.PackedBits;
+
 /**
  * A length-prefixed array of <b>signed</b> longs. The prefix is a <b>signed</b> integer (thus 4 bytes)
  * and indicates the number of 8 byte longs.
@@ -54,6 +56,7 @@ public class TagLongArray extends TagArray<Long, long[]> {
 	public TagLongArray set(int index, Number value) {
 		checkBounds(index);
 		Array.setLong(getValue(), index, value.longValue());
+		modified();
 		return this;
 	}
 
@@ -68,6 +71,75 @@ public class TagLongArray extends TagArray<Long, long[]> {
 		return new TagLong(get(index));
 	}
 	
+	/**
+	 * Unpacks the fixed-width unsigned integers packed into this array, as used for block states,
+	 * biomes, and heightmaps (see {@link PackedBits})
+	 * 
+	 * @param bits the number of bits per entry ({@code 1-32})
+	 * @param count the number of entries
+	 * @param spanning whether entries may span two longs (used before Minecraft 1.16)
+	 * @return the entries
+	 */
+	public int[] unpack(int bits, int count, boolean spanning) {
+		int[] values = new int[count];
+		PackedBits.unpack(getValue(), bits, spanning, values);
+		return values;
+	}
+	
+	/**
+	 * Unpacks the fixed-width unsigned integers packed into this array into an existing array.
+	 * The number of entries is given by the length of {@code out}
+	 * 
+	 * @param bits the number of bits per entry ({@code 1-32})
+	 * @param spanning whether entries may span two longs (used before Minecraft 1.16)
+	 * @param out the array to store the entries in
+	 * @return {@code out}
+	 */
+	public int[] unpack(int bits, boolean spanning, int[] out) {
+		PackedBits.unpack(getValue(), bits, spanning, out);
+		return out;
+	}
+	
+	/**
+	 * Unpacks the fixed-width unsigned integers packed into this array into an existing array.
+	 * The number of entries is given by the length of {@code out}
+	 * 
+	 * @param bits the number of bits per entry ({@code 1-16})
+	 * @param spanning whether entries may span two longs (used before Minecraft 1.16)
+	 * @param out the array to store the entries in
+	 * @return {@code out}
+	 */
+	public short[] unpack(int bits, boolean spanning, short[] out) {
+		PackedBits.unpack(getValue(), bits, spanning, out);
+		return out;
+	}
+	
+	/**
+	 * Replaces the value of this array with the given fixed-width unsigned integers packed into longs
+	 * 
+	 * @param bits the number of bits per entry ({@code 1-32})
+	 * @param spanning whether entries may span two longs (used before Minecraft 1.16)
+	 * @param values the entries
+	 * @return this array
+	 */
+	public TagLongArray pack(int bits, boolean spanning, int[] values) {
+		setValue(PackedBits.pack(values, bits, spanning));
+		return this;
+	}
+	
+	/**
+	 * Replaces the value of this array with the given fixed-width unsigned integers packed into longs
+	 * 
+	 * @param bits the number of bits per entry ({@code 1-16})
+	 * @param spanning whether entries may span two longs (used before Minecraft 1.16)
+	 * @param values the entries
+	 * @return this array
+	 */
+	public TagLongArray pack(int bits, boolean spanning, short[] values) {
+		setValue(PackedBits.pack(values, bits, spanning));
+		return this;
+	}
+	
 	@Override
 	protected boolean compare(Tag<long[]> tag) {
 		return Arrays.equals(getValue(), tag.getValue());
@@ -0,0 +1,107 @@
+/* MIT License
+ * 
+ * Copyright (c) 2022 SyntaxError404
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package at.syntaxerror.syntaxnbt.region;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import at.syntaxerror.syntaxnbt.tag.TagCompound;
+
+/**
+ * @author SyntaxError404
+ * 
+ */
+class WriteBehindSaverTest {
+	
+	private static final int SAVERS = 4;
+	private static final int CHUNKS = 64;
+	
+	@TempDir
+	Path directory;
+	
+	// random data does not compress, so each chunk occupies roughly 16KB
+	private static Chunk chunk(Random random, int id) {
+		byte[] data = new byte[16384];
+		random.nextBytes(data);
+		
+		TagCompound tag = new TagCompound();
+		tag.putInt("id", id);
+		tag.putByteArray("data", data);
+		
+		return new Chunk(tag);
+	}
+	
+	@Test
+	void concurrentSaversDoNotLivelock() throws Exception {
+		try(RegionCache cache = new RegionCache(directory, 4, true);
+			WriteBehindSaver saver = new WriteBehindSaver(cache, 1000, 50_000)) {
+			
+			ExecutorService executor = Executors.newFixedThreadPool(SAVERS);
+			
+			try {
+				assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+					List<Future<?>> tasks = new ArrayList<>();
+					
+					for(int i = 0; i < SAVERS; ++i) {
+						int saverId = i;
+						
+						tasks.add(executor.submit(() -> {
+							Random random = new Random(saverId);
+							
+							for(int j = 0; j < CHUNKS; ++j)
+								saver.save(saverId * 32, j, chunk(random, saverId * CHUNKS + j));
+							
+							return null;
+						}));
+					}
+					
+					for(Future<?> task : tasks)
+						task.get();
+				});
+			} finally {
+				executor.shutdownNow();
+			}
+			
+			saver.flush();
+			
+			assertEquals(0, saver.getDirtyBytes());
+			
+			for(int i = 0; i < SAVERS; ++i)
+				for(int j = 0; j < CHUNKS; ++j)
+					assertEquals(i * CHUNKS + j, cache.readChunk(i * 32, j).getData().getInt("id"));
+		}
+	}
+	
+}